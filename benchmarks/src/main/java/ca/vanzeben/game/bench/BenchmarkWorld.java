@@ -0,0 +1,46 @@
+package ca.vanzeben.game.bench;
+
+import java.util.Random;
+
+import ca.vanzeben.game.entities.Player;
+import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Builds levels for the benchmarks without a window or keyboard.
+ */
+public class BenchmarkWorld {
+	public static final String DEFAULT_LEVEL = "/levels/water_test_level.png";
+
+	private static final long SEED = 42;
+
+	/***
+	 * Load a level, put a player in the middle of it and scatter numWumpus Wumpus
+	 * and numTowers towers around it at random (always the same positions).
+	 */
+	public static Level create(String levelPath, int numWumpus, int numTowers) {
+		Level level = new Level(levelPath);
+		Player player = new Player(level, level.getLevelWidth() / 2,
+				level.getLevelHeight() / 2, null, "bench", SpriteSheet.characterSheet);
+		level.addPlayer(player);
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < numWumpus; i++) {
+			level.addWumpus(random.nextInt(level.getLevelWidth()),
+					random.nextInt(level.getLevelHeight()));
+		}
+		for (int i = 0; i < numTowers; i++) {
+			level.addTower(random.nextInt(level.getLevelWidth()),
+					random.nextInt(level.getLevelHeight()));
+		}
+		return level;
+	}
+
+	/***
+	 * Parse a viewport size written as WIDTHxHEIGHT, e.g. 960x720.
+	 */
+	public static int[] parseViewport(String viewport) {
+		String[] parts = viewport.split("x");
+		return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+	}
+}
@@ -0,0 +1,77 @@
+package ca.vanzeben.game.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.vanzeben.game.level.FlowField;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Cost of searching the flow field to the player again (done when the player
+ * moves to another tile), and of CHASERS chasers looking up which way to go in
+ * it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FlowFieldBenchmark {
+	private static final int CHASERS = 1024;
+
+	@Param({ "16", "48", "128" })
+	public int radius;
+
+	private FlowField field;
+	private int targetX, targetY;
+	private int[] chaserX = new int[CHASERS];
+	private int[] chaserY = new int[CHASERS];
+
+	@Setup
+	public void setup() {
+		Level level = BenchmarkWorld.create(BenchmarkWorld.DEFAULT_LEVEL, 0, 0);
+		field = new FlowField(level.getSolidTiles(), Level.tileSize, radius);
+		targetX = level.getPlayer().centerX();
+		targetY = level.getPlayer().centerY();
+		field.update(targetX, targetY);
+
+		Random random = new Random(42);
+		int spread = radius * Level.tileSize;
+		for (int i = 0; i < CHASERS; i++) {
+			chaserX[i] = targetX + random.nextInt(spread * 2) - spread;
+			chaserY[i] = targetY + random.nextInt(spread * 2) - spread;
+		}
+	}
+
+	@Benchmark
+	public boolean search() {
+		// Step between two neighbouring tiles so every call searches
+		targetX += targetX % (Level.tileSize * 2) < Level.tileSize ? Level.tileSize
+				: -Level.tileSize;
+		return field.update(targetX, targetY);
+	}
+
+	@Benchmark
+	public int sample() {
+		int moving = 0;
+		for (int i = 0; i < CHASERS; i++) {
+			if (field.getDirection(chaserX[i], chaserY[i]) != FlowField.NONE) {
+				moving++;
+			}
+		}
+		return moving;
+	}
+}
@@ -0,0 +1,63 @@
+package ca.vanzeben.game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.vanzeben.game.gfx.Font;
+import ca.vanzeben.game.gfx.Screen;
+
+/***
+ * Cost of the text drawn every frame: the title banner and the debug pixel
+ * scale along the edges of the screen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FontRenderBenchmark {
+	private static final String TITLE = "Wizard Adventure";
+
+	@Param({ "960x720", "1920x1080" })
+	public String viewport;
+
+	private Screen screen;
+
+	@Setup
+	public void setup() {
+		int[] size = BenchmarkWorld.parseViewport(viewport);
+		screen = new Screen(size[0], size[1]);
+	}
+
+	@Benchmark
+	public Screen renderTitle() {
+		screen.renderTextAtScreenCoordinates(TITLE, Font.DEFAULT,
+				screen.getWidth() - Font.DEFAULT.getWidthOf(TITLE) * 3, 10, 3);
+		return screen;
+	}
+
+	@Benchmark
+	public Screen renderTitleCached() {
+		screen.renderCachedTextAtScreenCoordinates(TITLE, Font.DEFAULT,
+				screen.getWidth() - Font.DEFAULT.getWidthOf(TITLE) * 3, 10, 3);
+		return screen;
+	}
+
+	@Benchmark
+	public Screen renderPixelScale() {
+		screen.displayPixelScale(50);
+		return screen;
+	}
+}
@@ -0,0 +1,71 @@
+package ca.vanzeben.game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Cost of Level.renderTiles() and Level.renderEntities() for one frame. The
+ * camera pans across the level a little each frame so chunks get baked and
+ * released as in a real game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelRenderBenchmark {
+	@Param({ "960x720", "1920x1080" })
+	public String viewport;
+
+	@Param({ "10", "1000", "10000" })
+	public int entityCount;
+
+	private Level level;
+	private Screen screen;
+	private int frame = 0;
+
+	@Setup
+	public void setup() {
+		int[] size = BenchmarkWorld.parseViewport(viewport);
+		screen = new Screen(size[0], size[1]);
+		level = BenchmarkWorld.create(BenchmarkWorld.DEFAULT_LEVEL, entityCount, 0);
+	}
+
+	private void panCamera() {
+		frame++;
+		int maxX = Math.max(1, level.getLevelWidth() - screen.getWidth());
+		int maxY = Math.max(1, level.getLevelHeight() - screen.getHeight());
+		screen.setScreenPosition((frame * 7) % maxX, (frame * 5) % maxY);
+	}
+
+	@Benchmark
+	public Screen renderTiles() {
+		panCamera();
+		screen.reset();
+		level.renderTiles(screen);
+		return screen;
+	}
+
+	@Benchmark
+	public Screen renderEntities() {
+		panCamera();
+		screen.reset();
+		level.renderEntities(screen);
+		return screen;
+	}
+}
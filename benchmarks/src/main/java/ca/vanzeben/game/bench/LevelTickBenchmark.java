@@ -0,0 +1,54 @@
+package ca.vanzeben.game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Cost of one Level.tick() with a given number of Wumpus chasing the player
+ * and a few towers firing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelTickBenchmark {
+	@Param({ "10", "1000", "10000" })
+	public int entityCount;
+
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	private ca.vanzeben.game.level.Level level;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		level = BenchmarkWorld.create(BenchmarkWorld.DEFAULT_LEVEL, entityCount, 4);
+		level.setTickParallelism(parallelism);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		level.setTickParallelism(1);
+	}
+
+	@Benchmark
+	public ca.vanzeben.game.level.Level tick() {
+		level.tick();
+		return level;
+	}
+}
@@ -0,0 +1,59 @@
+package ca.vanzeben.game.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Cost of filling the screen with scaled sprites through Screen.render().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScreenRenderBenchmark {
+	@Param({ "960x720", "1920x1080" })
+	public String viewport;
+
+	@Param({ "GRAPHICS", "PIXELS" })
+	public Screen.RenderMode renderMode;
+
+	private Screen screen;
+
+	@Setup
+	public void setup() {
+		int[] size = BenchmarkWorld.parseViewport(viewport);
+		screen = new Screen(size[0], size[1]);
+		screen.setRenderMode(renderMode);
+	}
+
+	@Benchmark
+	public Screen renderFullScreenOfTiles() {
+		int tileSize = Level.tileSize;
+		screen.reset();
+
+		for (int y = 0; y < screen.getHeight(); y += tileSize) {
+			for (int x = 0; x < screen.getWidth(); x += tileSize) {
+				screen.render(x, y, SpriteSheet.tileSheet, 0, (x / tileSize) % 4,
+						Screen.MirrorDirection.NONE, tileSize, tileSize);
+			}
+		}
+		return screen;
+	}
+}
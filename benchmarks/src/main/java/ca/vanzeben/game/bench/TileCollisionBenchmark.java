@@ -0,0 +1,103 @@
+package ca.vanzeben.game.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Cost of checking MOVES moves against the level's tiles: the old four point
+ * probe (four Level.getTileTypeAtWorldCoordinates() calls at the destination,
+ * which misses walls thinner than a step), a box test against the solid tile
+ * mask, and a swept move that slides along walls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TileCollisionBenchmark {
+	private static final int MOVES = 1024;
+	private static final int HALF_WIDTH = 4, HALF_HEIGHT = 10;
+
+	// Pixels moved per step: a wumpus, the player, a very fast projectile
+	@Param({ "5", "15", "120" })
+	public int speed;
+
+	private Level level;
+	private int[] centerX = new int[MOVES];
+	private int[] centerY = new int[MOVES];
+	private int[] dx = new int[MOVES];
+	private int[] dy = new int[MOVES];
+
+	@Setup
+	public void setup() {
+		level = BenchmarkWorld.create(BenchmarkWorld.DEFAULT_LEVEL, 0, 0);
+
+		Random random = new Random(42);
+		for (int i = 0; i < MOVES; i++) {
+			centerX[i] = random.nextInt(level.getLevelWidth());
+			centerY[i] = random.nextInt(level.getLevelHeight());
+			double angle = random.nextDouble() * 2 * Math.PI;
+			dx[i] = (int) (speed * Math.cos(angle));
+			dy[i] = (int) (speed * Math.sin(angle));
+		}
+	}
+
+	@Benchmark
+	public int fourPointProbe() {
+		int blocked = 0;
+		for (int i = 0; i < MOVES; i++) {
+			int cx = centerX[i] + dx[i];
+			int cy = centerY[i] + dy[i];
+			if (level.getTileTypeAtWorldCoordinates(cx + HALF_WIDTH, cy).isSolid()
+					|| level.getTileTypeAtWorldCoordinates(cx - HALF_WIDTH, cy).isSolid()
+					|| level.getTileTypeAtWorldCoordinates(cx, cy + HALF_HEIGHT).isSolid()
+					|| level.getTileTypeAtWorldCoordinates(cx, cy - HALF_HEIGHT).isSolid()) {
+				blocked++;
+			}
+		}
+		return blocked;
+	}
+
+	@Benchmark
+	public int solidMaskBox() {
+		int blocked = 0;
+		for (int i = 0; i < MOVES; i++) {
+			if (level.isAreaSolid(centerX[i] + dx[i] - HALF_WIDTH,
+					centerY[i] + dy[i] - HALF_HEIGHT, HALF_WIDTH * 2 + 1,
+					HALF_HEIGHT * 2 + 1)) {
+				blocked++;
+			}
+		}
+		return blocked;
+	}
+
+	@Benchmark
+	public int sweptSlide() {
+		int moved = 0;
+		for (int i = 0; i < MOVES; i++) {
+			int boxX = centerX[i] - HALF_WIDTH;
+			int boxY = centerY[i] - HALF_HEIGHT;
+			int movedX = level.sweepX(boxX, boxY, HALF_WIDTH * 2 + 1,
+					HALF_HEIGHT * 2 + 1, dx[i]);
+			int movedY = level.sweepY(boxX + movedX, boxY, HALF_WIDTH * 2 + 1,
+					HALF_HEIGHT * 2 + 1, dy[i]);
+			moved += movedX + movedY;
+		}
+		return moved;
+	}
+}
@@ -2,21 +2,44 @@ package ca.vanzeben.game;
 
 import java.awt.Canvas;
 import java.awt.Dimension;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Random;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
 import ca.vanzeben.game.entities.Coin;
+import ca.vanzeben.game.entities.Fireball;
 import ca.vanzeben.game.entities.Player;
+import ca.vanzeben.game.entities.Tower;
+import ca.vanzeben.game.entities.Wumpus;
+import ca.vanzeben.game.gfx.AcceleratedImages;
 import ca.vanzeben.game.gfx.Font;
+import ca.vanzeben.game.gfx.RecordingScreen;
+import ca.vanzeben.game.gfx.RenderExchange;
+import ca.vanzeben.game.gfx.RenderSnapshot;
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
+import ca.vanzeben.game.level.LevelSaver;
+import ca.vanzeben.game.level.PagedTileMap;
+import ca.vanzeben.game.metrics.AllocationMeter;
+import ca.vanzeben.game.metrics.Gauge;
+import ca.vanzeben.game.metrics.Histogram;
+import ca.vanzeben.game.metrics.MetricsOverlay;
+import ca.vanzeben.game.metrics.MetricsRegistry;
 import ca.vanzeben.game.level.tiles.Tile;
 
 public class Game extends Canvas implements Runnable {
@@ -27,6 +50,51 @@ public class Game extends Canvas implements Runnable {
 	public static final int SCALE = 1;
 
 	public static final String NAME = "Game";
+
+	// GRAPHICS draws sprites with Graphics2D, PIXELS blits them straight into the
+	// screen's pixel array
+	public static final Screen.RenderMode RENDER_MODE = Screen.RenderMode.GRAPHICS;
+
+	// Number of threads used to tick entities that can be ticked in parallel
+	public static final int TICK_PARALLELISM = 1;
+
+	// Where to autosave the level (null = don't) and how often, in ticks. Each
+	// autosave only writes what changed, in the background.
+	public static final String AUTOSAVE_FILE = null;
+	public static final int AUTOSAVE_TICKS = 60 * 30;
+
+	// Draw frame timings, allocation rate and entity counts over the game
+	public static final boolean SHOW_METRICS = false;
+
+	// Game speed, the most ticks run back to back to catch up after a stall,
+	// and the most frames drawn per second (0 = one per tick). Frames between
+	// ticks draw entities part way between them.
+	public static final int TICKS_PER_SECOND = 60;
+	public static final int MAX_CATCH_UP_TICKS = 5;
+	public static final int FRAME_CAP = 120;
+
+	// Use the display's refresh rate as the frame cap instead of FRAME_CAP, so
+	// one frame is drawn per refresh. Java can't wait for the vertical blank
+	// itself; each frame is handed over with bs.show() and Toolkit.sync(), and
+	// the loop parks until the next refresh is due.
+	public static final boolean VSYNC = false;
+
+	// Draw on a separate thread from the one running the game. Each tick the
+	// game thread records where the entities are and which tiles changed, and
+	// the render thread draws the newest recording, so a slow frame doesn't
+	// hold up the game. Ignored for paged levels, which load regions on the
+	// game thread as they are drawn.
+	public static final boolean RENDER_THREAD = false;
+
+	// Draw straight into the window's back buffer (in video memory where the
+	// display supports it) instead of into an image that is then copied there
+	// every frame. Falls back to the image when there is no display to
+	// accelerate or with RenderMode.PIXELS, which needs the image's pixels.
+	public static final boolean ACCELERATED = true;
+
+	// Copy the sprites the game uses into one small atlas at startup and draw
+	// them from that instead of keeping the whole sprite sheets in memory
+	public static final boolean PACK_SPRITES = true;
 	public static final Dimension DIMENSIONS = new Dimension(SCREEN_WIDTH * SCALE,
 			SCREEN_HEIGHT * SCALE);
 
@@ -36,11 +104,48 @@ public class Game extends Canvas implements Runnable {
 	private static Screen screen;
 	private static Level level;
 	private static InputHandler input;
+	private LevelSaver autosaver;
+
+	// Per-frame timings in nanoseconds, see getMetrics()
+	private MetricsRegistry metrics = new MetricsRegistry();
+	private MetricsOverlay metricsOverlay = new MetricsOverlay(metrics);
+	private AllocationMeter allocationMeter = new AllocationMeter();
+	private Histogram frameTime = metrics.histogram("frame");
+	private Histogram tickTime = metrics.histogram("tick");
+	private Histogram levelTickTime = metrics.histogram("level.tick");
+	private Histogram renderTilesTime = metrics.histogram("render.tiles");
+	private Histogram renderEntitiesTime = metrics.histogram("render.entities");
+	private Histogram textTime = metrics.histogram("render.text");
+	private Histogram showTime = metrics.histogram("show");
+	private Histogram frameBytes = metrics.histogram("alloc.bytes");
+	private Gauge entityCount = metrics.gauge("entities");
+	private Gauge storedEntityCount = metrics.gauge("stored");
+	private Gauge entitiesDrawn = metrics.gauge("drawn");
+	private Gauge entitiesCulled = metrics.gauge("culled");
+	private long tickNanosSinceFrame = 0; // only used without a render thread
+	private long allocatedAtLastFrame = 0;
+
+	private Thread renderThread;
+	private boolean renderThreaded; // RENDER_THREAD, unless the level can't
+	private RecordingScreen recordingScreen;
+	private RenderExchange renderExchange = new RenderExchange();
+	private boolean accelerated = false;
+
+	private GameLoop loop = new GameLoop(TICKS_PER_SECOND, new GameLoop.Target() {
+		public void tick() {
+			Game.this.tick();
+		}
+
+		public void render(float alpha) {
+			Game.this.render(alpha);
+		}
+	});
 
 	public JFrame frame;
 
-	private boolean running = false;
+	private volatile boolean running = false;
 	private int tickCount = 0;
+	private int tickCountPublished = -1; // tick the render thread last got a snapshot of
 
 	private Player player;
 	private ArrayList<Coin> coinList;
@@ -52,95 +157,187 @@ public class Game extends Canvas implements Runnable {
 	public void init() {
 		game = this;
 
+		// Decode the sheets used straight away together rather than one by one
+		// as they are first drawn
+		long loadStart = System.nanoTime();
+		SpriteSheet.preload(SpriteSheet.DungeonCrawl, SpriteSheet.characterSheet,
+				SpriteSheet.tileSheet, Font.DEFAULT.getSheet());
+		debug(DebugLevel.INFO, "Loaded sprite sheets in "
+				+ (System.nanoTime() - loadStart) / 1000000 + "ms");
 		SpriteSheet.characterSheet.displayInfo();
+		if (PACK_SPRITES) {
+			debug(DebugLevel.INFO, buildSpriteAtlas().report());
+		}
 
 		screen = new Screen(SCREEN_WIDTH, SCREEN_HEIGHT);
+		screen.setRenderMode(RENDER_MODE);
+		accelerated = ACCELERATED && RENDER_MODE == Screen.RenderMode.GRAPHICS
+				&& AcceleratedImages.isAvailable();
+		debug(DebugLevel.INFO, accelerated ? "Drawing straight into the back buffer"
+				: "Drawing into the screen image");
 		input = new InputHandler(this);
-		level = new Level("/levels/water_test_level.png");
-		level.setTileAt(3, 3, Tile.STONE);
-		level.setTileAt(10, 2, Tile.GRASS2);
-		level.setTileAt(5, 1, Tile.WHALE);
+		level = createLevel();
 
 		player = new Player(level, 100, 100, input,
 				JOptionPane.showInputDialog(this, "Please enter a username"),
 				SpriteSheet.characterSheet);
 		coin = new Coin(100, 500, 5, level);
 		
+		populateLevel(level, player, new Random());
+
+		if (AUTOSAVE_FILE != null) {
+			autosaver = new LevelSaver(level, new File(AUTOSAVE_FILE));
+		}
+	}
+
+	/***
+	 * Pack every sprite drawn by tiles, entities and the default font into one
+	 * atlas and install it (see SpriteAtlas).
+	 * 
+	 * @return
+	 */
+	public static SpriteAtlas buildSpriteAtlas() {
+		SpriteAtlas atlas = new SpriteAtlas();
+		for (Tile tile : Tile.tiles) {
+			tile.addSpritesTo(atlas);
+		}
+		Player.addSprites(atlas, SpriteSheet.characterSheet);
+		Wumpus.addSprites(atlas);
+		Fireball.addSprites(atlas);
+		Tower.addSprites(atlas);
+		Coin.addSprites(atlas);
+		Font.DEFAULT.addGlyphsTo(atlas);
+
+		atlas.pack();
+		atlas.install();
+		return atlas;
+	}
+
+	/***
+	 * Load the game's level. Shared with HeadlessGame so both play the same map.
+	 * 
+	 * @return
+	 */
+	public static Level createLevel() {
+		Level level = new Level("/levels/water_test_level.png");
+		level.setTickParallelism(TICK_PARALLELISM);
+		level.setTileAt(3, 3, Tile.STONE);
+		level.setTileAt(10, 2, Tile.GRASS2);
+		level.setTileAt(5, 1, Tile.WHALE);
+		return level;
+	}
+
+	/***
+	 * Add the player and the starting entities to the level. Wumpus positions
+	 * are taken from random.
+	 * 
+	 * @param level
+	 * @param player
+	 * @param random
+	 */
+	public static void populateLevel(Level level, Player player, Random random) {
 		level.addPlayer(player);
 		level.addTower(10*16, 20*16);
 		
 		level.addCoin(5*16, 5*16, 3);
 		level.addCoin(5*16, 6*16, 10);
 		
-		
-		
 		for (int i = 0; i < 10; i++) {
-			int x = (int)(Math.random()*1000);
-			int y = (int)(Math.random()*1000);
+			int x = (int)(random.nextDouble()*1000);
+			int y = (int)(random.nextDouble()*1000);
 			level.addWumpus(x, y);
 		}
 	}
 
 	public synchronized void start() {
 		running = true;
+		loop.setMaxCatchUpTicks(MAX_CATCH_UP_TICKS);
+		loop.setFrameCap(VSYNC ? getRefreshRate() : FRAME_CAP);
+		loop.setMetrics(metrics);
 
 		thread = new Thread(this, NAME + "_main");
 		thread.start();
 	}
 
+	// Refresh rate of the display the game is on, or FRAME_CAP if it isn't known
+	private int getRefreshRate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return FRAME_CAP;
+		}
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		GraphicsDevice device = config != null ? config.getDevice()
+				: GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+		int refreshRate = device.getDisplayMode().getRefreshRate();
+		return refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN ? refreshRate : FRAME_CAP;
+	}
+
+	/***
+	 * Stop the game and save what hasn't been saved yet. Called when the window
+	 * is closed; does nothing if the game isn't running.
+	 */
 	public synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
 		running = false;
+		loop.stop();
 
 		try {
-			thread.join();
+			if (Thread.currentThread() != thread) {
+				thread.join();
+			}
+			if (renderThread != null && Thread.currentThread() != renderThread) {
+				renderThread.join();
+			}
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-	}
-
-	public void run() {
-		long lastTime = System.nanoTime();
-		double nsPerTick = 1000000000D / 60D; // Desired 60 frames per second
+		thread = null;
 
-		int ticks = 0;
-		int frames = 0;
+		if (autosaver != null) {
+			// saveDelta() does nothing while an autosave is still being written
+			autosaver.waitForSaves();
+			autosaver.saveDelta();
+			autosaver.close();
+		}
 
-		long lastTimer = System.currentTimeMillis();
-		double gameStepsToRun = 0;
+		if (level != null && level.getTileMap() instanceof PagedTileMap) {
+			try {
+				((PagedTileMap) level.getTileMap()).close();
+			} catch (IOException e) {
+				debug(DebugLevel.WARNING, "Couldn't save the level: " + e);
+			}
+		}
+	}
 
+	public void run() {
 		init();
 
-		while (running) {
-			long now = System.nanoTime();
-			gameStepsToRun += (now - lastTime) / nsPerTick;
-			
-			lastTime = now;
-			boolean shouldRender = true;
-
-			while (gameStepsToRun >= 1) {
-				ticks++;
-				tick();
-				gameStepsToRun -= 1;
-				shouldRender = true;
-			}
+		renderThreaded = RENDER_THREAD && !(level.getTileMap() instanceof PagedTileMap);
+		if (RENDER_THREAD && !renderThreaded) {
+			debug(DebugLevel.WARNING, "Paged levels are drawn on the game thread");
+		}
 
-			try {
-				Thread.sleep(2);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+		if (renderThreaded) {
+			level.useRenderThread();
+			recordingScreen = new RecordingScreen(SCREEN_WIDTH, SCREEN_HEIGHT);
+			renderThread = new Thread(new Runnable() {
+				public void run() {
+					renderLoop();
+				}
+			}, NAME + "_render");
+			renderThread.start();
+		}
 
-			if (shouldRender) {
-				frames++;
-				render();
-			}
+		loop.run();
+	}
 
-			// if one second has passed, display frames per second (for informational purposes)
-			if (System.currentTimeMillis() - lastTimer >= 1000) {
-				lastTimer += 1000;
-				debug(DebugLevel.INFO, ticks + " ticks, " + frames + " frames");
-				frames = 0;
-				ticks = 0;
+	// Draw each new snapshot from the game thread as it arrives
+	private void renderLoop() {
+		while (running) {
+			RenderSnapshot snapshot = renderExchange.awaitNext(100000000L);
+			if (snapshot != null) {
+				drawFrame(snapshot, 1f);
 			}
 		}
 	}
@@ -149,44 +346,166 @@ public class Game extends Canvas implements Runnable {
 	 * Updates the game state once per frame.
 	 */
 	public void tick() {
+		long start = System.nanoTime();
 		tickCount++;
 		level.tick();
+		levelTickTime.record(System.nanoTime() - start);
+
+		if (autosaver != null && tickCount % AUTOSAVE_TICKS == 0) {
+			autosaver.saveDelta();
+		}
+
+		// once a second, display ticks and frames per second (for informational purposes)
+		if (tickCount % TICKS_PER_SECOND == 0) {
+			debug(DebugLevel.INFO, loop.getTicksLastSecond() + " ticks, " + loop.getFramesLastSecond()
+					+ " frames, frame p99 " + String.format("%.2f", frameTime.getP99() / 1e6) + "ms");
+		}
+
+		entityCount.set(level.getNumEntities());
+		storedEntityCount.set(level.getEntityStore().size());
+
+		long tickNanos = System.nanoTime() - start;
+		tickTime.record(tickNanos);
+		if (!renderThreaded) {
+			tickNanosSinceFrame += tickNanos;
+		}
 	}
 
 	/***
-	 * Render the game
+	 * Render the game. With a render thread, this only records the entities for
+	 * the render thread to draw.
+	 * 
+	 * @param alpha
+	 *          how far between the previous tick and the last one to draw
+	 *          entities, 0 to 1
 	 */
-	public void render() {
+	public void render(float alpha) {
+		if (renderThreaded) {
+			publishRenderSnapshot();
+		} else {
+			drawFrame(null, alpha);
+		}
+	}
+
+	// Record how the entities look after the last tick, for the render thread.
+	// Frames between ticks would record the same thing again, so they don't.
+	private void publishRenderSnapshot() {
+		if (tickCount == tickCountPublished) {
+			return;
+		}
+		tickCountPublished = tickCount;
+
+		RenderSnapshot snapshot = renderExchange.getBackBuffer();
+		recordingScreen.setSnapshot(snapshot);
+
+		centerScreenOn(recordingScreen, level, player);
+		snapshot.setCamera(recordingScreen.getX(), recordingScreen.getY());
+		level.renderEntities(recordingScreen);
+		level.recordTileChanges(snapshot);
+		entitiesDrawn.set(level.getNumEntitiesDrawn());
+		entitiesCulled.set(level.getNumEntitiesCulled());
+
+		renderExchange.publish();
+	}
+
+	/***
+	 * Draw a frame and show it.
+	 * 
+	 * @param snapshot
+	 *          entities recorded by the game thread, or null to draw the level's
+	 *          entities directly
+	 * @param alpha
+	 *          interpolation when drawing entities directly
+	 */
+	private void drawFrame(RenderSnapshot snapshot, float alpha) {
 		BufferStrategy bs = getBufferStrategy();
 		if (bs == null) {
 			createBufferStrategy(2);
 			return;
 		}
 
-		Graphics g = bs.getDrawGraphics();
+		long frameStart = System.nanoTime();
+		long showNanos;
+		if (accelerated) {
+			// The back buffer can be lost (e.g. the display mode changes or another
+			// program takes the video memory) at any time, in which case the whole
+			// frame has to be drawn again
+			do {
+				do {
+					Graphics g = bs.getDrawGraphics();
+					screen.setGraphicsContext(g);
+					renderFrame(snapshot, alpha);
+					screen.drawToImage();
+					g.dispose();
+				} while (bs.contentsRestored());
+
+				long showStart = System.nanoTime();
+				bs.show();
+				showNanos = System.nanoTime() - showStart;
+			} while (bs.contentsLost());
+		} else {
+			renderFrame(snapshot, alpha);
+
+			// Only the copy needs to be redone if the back buffer is lost, the
+			// frame is still in the screen image
+			long showStart = System.nanoTime();
+			do {
+				do {
+					Graphics g = bs.getDrawGraphics();
+					g.drawImage(screen.getImage(), 0, 0, null);
+					g.dispose();
+				} while (bs.contentsRestored());
+				bs.show();
+			} while (bs.contentsLost());
+			showNanos = System.nanoTime() - showStart;
+		}
+		Toolkit.getDefaultToolkit().sync(); // stops frames being held back on Linux
+		long frameEnd = System.nanoTime();
+		showTime.record(showNanos);
+
+		frameTime.record(tickNanosSinceFrame + frameEnd - frameStart);
+		tickNanosSinceFrame = 0; // stays 0 with a render thread
+		if (allocationMeter.isSupported()) {
+			long allocated = allocationMeter.getAllocatedBytes();
+			frameBytes.record(allocated - allocatedAtLastFrame);
+			allocatedAtLastFrame = allocated;
+		}
+	}
+
+	/***
+	 * Draw the level, entities and overlays with screen, into whatever it is
+	 * currently drawing into.
+	 */
+	private void renderFrame(RenderSnapshot snapshot, float alpha) {
 		screen.reset(); // You must call this BEFORE you render
 										// anything!
-
-		// Set screen position centered on player
-		int screenX = player.x() - (screen.getWidth() / 2);
-		int screenY = player.y() - (screen.getHeight() / 2);
-
-		// Limit the screen position
-		screenX = Math.max(0, screenX); // if < 0 set to 0
-		screenY = Math.max(0, screenY);
-		screenX = Math.min((level.getLevelWidth() - screen.getWidth()), screenX);
-		screenY = Math.min((level.getLevelHeight() - screen.getHeight()), screenY);
-
-		screen.setScreenPosition(screenX, screenY);
+		if (snapshot == null) {
+			screen.setInterpolation(alpha);
+			centerScreenOn(screen, level, player);
+		} else {
+			screen.setScreenPosition(snapshot.getCameraX(), snapshot.getCameraY());
+			level.applyTileChanges(snapshot);
+		}
 
 		// *****************************************************************************************
 		// Do all rendering with screen here, after setting it graphics context
 
+		long start = System.nanoTime();
 		level.renderTiles(screen);
-		level.renderEntities(screen);
+		long tilesDone = System.nanoTime();
+		if (snapshot == null) {
+			level.renderEntities(screen);
+			entitiesDrawn.set(level.getNumEntitiesDrawn());
+			entitiesCulled.set(level.getNumEntitiesCulled());
+		} else {
+			snapshot.replay(screen);
+		}
+		long entitiesDone = System.nanoTime();
+		renderTilesTime.record(tilesDone - start);
+		renderEntitiesTime.record(entitiesDone - tilesDone);
 
 		String msg = "Wizard Adventure";
-		screen.renderTextAtScreenCoordinates(msg, Font.DEFAULT,
+		screen.renderCachedTextAtScreenCoordinates(msg, Font.DEFAULT,
 				screen.getWidth() - Font.DEFAULT.getWidthOf(msg) * 3, 10, 3);
 
 		if (debug) {
@@ -195,14 +514,43 @@ public class Game extends Canvas implements Runnable {
 			screen.displayMouseCoordinatesAtMouse();
 			screen.displayPixelScale(50);
 		}
+		long textDone = System.nanoTime();
+		textTime.record(textDone - entitiesDone);
 
-		// *****************************************************************************************
-		// Dispose of current context and show the rendered buffer
+		if (SHOW_METRICS) {
+			// Timings recorded by the game thread may be a frame behind here. Histogram
+			// is synchronized, so reading them while that thread records is safe.
+			metricsOverlay.render(screen, 60, 40);
+		}
+	}
 
-		g.drawImage(screen.getImage(), 0, 0, null);
+	/***
+	 * Timings of each part of the game loop, allocation per frame and entity
+	 * counts.
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
 
-		g.dispose();
-		bs.show();
+	/***
+	 * Set the screen position centered on player, without showing anything past
+	 * the edges of the level.
+	 * 
+	 * @param screen
+	 * @param level
+	 * @param player
+	 */
+	public static void centerScreenOn(Screen screen, Level level, Player player) {
+		int screenX = player.renderX(screen) - (screen.getWidth() / 2);
+		int screenY = player.renderY(screen) - (screen.getHeight() / 2);
+
+		// Limit the screen position
+		screenX = Math.max(0, screenX); // if < 0 set to 0
+		screenY = Math.max(0, screenY);
+		screenX = Math.min((level.getLevelWidth() - screen.getWidth()), screenX);
+		screenY = Math.min((level.getLevelHeight() - screen.getHeight()), screenY);
+
+		screen.setScreenPosition(screenX, screenY);
 	}
 
 	public static Screen getScreen() {
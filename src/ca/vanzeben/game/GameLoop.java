@@ -0,0 +1,200 @@
+package ca.vanzeben.game;
+
+import java.util.concurrent.locks.LockSupport;
+
+import ca.vanzeben.game.metrics.Histogram;
+import ca.vanzeben.game.metrics.MetricsRegistry;
+
+/***
+ * Runs a game at a fixed number of ticks per second and renders in between.
+ *
+ * Ticks always advance the game by the same amount of time. If the game falls
+ * behind (e.g. after a long garbage collection or the window being dragged) it
+ * runs extra ticks to catch up, but never more than maxCatchUpTicks in a row;
+ * anything beyond that is dropped rather than letting the game fall further
+ * and further behind.
+ *
+ * With a frame cap the game is rendered up to that many times a second. With
+ * no frame cap it is rendered once after each tick. Either way render() is told
+ * how far it is between the last tick and the next one so entities can be
+ * drawn part way between (see Entity.renderX()).
+ *
+ * The thread parks between ticks and frames until the next one is due instead
+ * of polling, so an idle game uses almost no CPU.
+ */
+public class GameLoop {
+
+	/***
+	 * What the loop runs.
+	 */
+	public interface Target {
+		/***
+		 * Advance the game by one tick.
+		 */
+		void tick();
+
+		/***
+		 * Draw the game.
+		 *
+		 * @param alpha
+		 *          how far between the previous tick and the last one to draw, 0
+		 *          to 1
+		 */
+		void render(float alpha);
+	}
+
+	private final Target target;
+	private final int ticksPerSecond;
+	private final long nanosPerTick;
+	private int maxCatchUpTicks = 5;
+	private long nanosPerFrame = 0; // 0 = no frame cap
+	private volatile boolean running = false;
+
+	private long ticksDropped = 0;
+	private int ticksLastSecond, framesLastSecond;
+	private Histogram frameInterval;
+
+	public GameLoop(int ticksPerSecond, Target target) {
+		if (ticksPerSecond <= 0) {
+			throw new IllegalArgumentException("Ticks per second must be positive: " + ticksPerSecond);
+		}
+		this.target = target;
+		this.ticksPerSecond = ticksPerSecond;
+		this.nanosPerTick = 1000000000L / ticksPerSecond;
+	}
+
+	/***
+	 * Most ticks to run back to back before rendering when the game has fallen
+	 * behind. Default 5.
+	 */
+	public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+		this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+	}
+
+	/***
+	 * Render at most this many frames per second, interpolating between ticks.
+	 * 0 (the default) renders once per tick.
+	 */
+	public void setFrameCap(int framesPerSecond) {
+		this.nanosPerFrame = framesPerSecond > 0 ? 1000000000L / framesPerSecond : 0;
+	}
+
+	/***
+	 * Record the time between frames in metrics, as "frame.interval".
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		this.frameInterval = metrics.histogram("frame.interval");
+	}
+
+	/***
+	 * Run the loop on the calling thread until stop() is called.
+	 */
+	public void run() {
+		running = true;
+
+		long nextTick = System.nanoTime();
+		long nextFrame = nextTick;
+		long lastFrame = nextTick;
+		long nextSecond = nextTick + 1000000000L;
+		int ticks = 0;
+		int frames = 0;
+
+		while (running) {
+			long now = System.nanoTime();
+
+			int ticksRun = 0;
+			while (running && now - nextTick >= 0) {
+				if (ticksRun == maxCatchUpTicks) {
+					// Too far behind: give up on the missed ticks
+					long behind = (now - nextTick) / nanosPerTick + 1;
+					ticksDropped += behind;
+					nextTick += behind * nanosPerTick;
+					break;
+				}
+
+				target.tick();
+				ticksRun++;
+				ticks++;
+				nextTick += nanosPerTick;
+				now = System.nanoTime();
+			}
+
+			boolean shouldRender = nanosPerFrame == 0 || now - nextFrame >= 0;
+
+			// The last tick covers up to nextTick, the one before it one tick earlier
+			float alpha = 1f - (float) (nextTick - now) / nanosPerTick;
+			alpha = Math.max(0f, Math.min(1f, alpha));
+
+			if (running && shouldRender) {
+				target.render(alpha);
+				frames++;
+
+				long rendered = System.nanoTime();
+				if (frameInterval != null) {
+					frameInterval.record(rendered - lastFrame);
+				}
+				lastFrame = rendered;
+
+				if (nanosPerFrame > 0) {
+					nextFrame += nanosPerFrame;
+					if (rendered - nextFrame > nanosPerFrame) {
+						nextFrame = rendered; // rendering can't keep up, don't try to catch up
+					}
+				}
+			}
+
+			if (now - nextSecond >= 0) {
+				ticksLastSecond = ticks;
+				framesLastSecond = frames;
+				ticks = 0;
+				frames = 0;
+				nextSecond += 1000000000L;
+			}
+
+			long wakeAt = nextTick;
+			if (nanosPerFrame > 0 && nextFrame - wakeAt < 0) {
+				wakeAt = nextFrame;
+			}
+			long wait = wakeAt - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+		}
+	}
+
+	/***
+	 * Make run() return after the current tick or frame.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public int getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	/***
+	 * Ticks run during the last full second.
+	 */
+	public int getTicksLastSecond() {
+		return ticksLastSecond;
+	}
+
+	/***
+	 * Frames rendered during the last full second.
+	 */
+	public int getFramesLastSecond() {
+		return framesLastSecond;
+	}
+
+	/***
+	 * Ticks skipped because the game fell more than maxCatchUpTicks behind.
+	 */
+	public long getTicksDropped() {
+		return ticksDropped;
+	}
+}
@@ -0,0 +1,172 @@
+package ca.vanzeben.game;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import ca.vanzeben.game.entities.Player;
+import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.Level;
+import ca.vanzeben.game.metrics.Histogram;
+import ca.vanzeben.game.metrics.MetricsRegistry;
+
+/***
+ * Runs the game's simulation without a window, e.g. on a server or in CI.
+ * Input comes from a ScriptedInput instead of the keyboard, and the level can
+ * optionally be rendered into an offscreen Screen.
+ * 
+ * Usage: HeadlessGame [ticks] [ticksPerSecond] [renderEvery] [scriptFile]
+ * 
+ * ticksPerSecond of 0 runs as fast as possible. renderEvery of 0 never renders,
+ * otherwise the level is rendered every renderEvery ticks.
+ */
+public class HeadlessGame {
+	private Level level;
+	private Player player;
+	private InputHandler input;
+	private ScriptedInput script;
+	private Screen screen;
+
+	private int ticksPerSecond = 0;
+	private int renderEvery = 0;
+	private int tickCount = 0;
+	private int framesRendered = 0;
+
+	private MetricsRegistry metrics = new MetricsRegistry();
+	private Histogram tickTime = metrics.histogram("level.tick");
+	private Histogram renderTilesTime = metrics.histogram("render.tiles");
+	private Histogram renderEntitiesTime = metrics.histogram("render.entities");
+
+	public HeadlessGame(ScriptedInput script, long seed) {
+		this.script = script;
+		this.input = new InputHandler();
+		this.level = Game.createLevel();
+		this.player = new Player(level, 100, 100, input, "headless",
+				SpriteSheet.characterSheet);
+		Game.populateLevel(level, player, new Random(seed));
+	}
+
+	/***
+	 * Number of ticks to run per second. 0 (the default) runs unthrottled.
+	 */
+	public void setTicksPerSecond(int ticksPerSecond) {
+		this.ticksPerSecond = ticksPerSecond;
+	}
+
+	/***
+	 * Render the level into an offscreen screen every renderEvery ticks. 0 (the
+	 * default) never renders.
+	 */
+	public void setRenderEvery(int renderEvery) {
+		this.renderEvery = renderEvery;
+		if (renderEvery > 0 && screen == null) {
+			screen = new Screen(Game.SCREEN_WIDTH, Game.SCREEN_HEIGHT);
+			screen.setRenderMode(Game.RENDER_MODE);
+		}
+	}
+
+	/***
+	 * Run numTicks ticks of the simulation.
+	 */
+	public void run(int numTicks) {
+		long nsPerTick = ticksPerSecond > 0 ? 1000000000L / ticksPerSecond : 0;
+		long nextTickTime = System.nanoTime();
+
+		for (int i = 0; i < numTicks; i++) {
+			if (nsPerTick > 0) {
+				long wait = nextTickTime - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				nextTickTime += nsPerTick;
+			}
+
+			tick();
+
+			if (renderEvery > 0 && tickCount % renderEvery == 0) {
+				render();
+			}
+		}
+	}
+
+	public void tick() {
+		if (script != null) {
+			script.apply(tickCount, input);
+		}
+		long start = System.nanoTime();
+		level.tick();
+		tickTime.record(System.nanoTime() - start);
+		tickCount++;
+	}
+
+	public void render() {
+		screen.reset();
+		Game.centerScreenOn(screen, level, player);
+		long start = System.nanoTime();
+		level.renderTiles(screen);
+		long tilesDone = System.nanoTime();
+		level.renderEntities(screen);
+		renderTilesTime.record(tilesDone - start);
+		renderEntitiesTime.record(System.nanoTime() - tilesDone);
+		framesRendered++;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public Player getPlayer() {
+		return player;
+	}
+
+	/***
+	 * Offscreen screen rendered into, or null if rendering is off.
+	 */
+	public Screen getScreen() {
+		return screen;
+	}
+
+	public int getTickCount() {
+		return tickCount;
+	}
+
+	public int getFramesRendered() {
+		return framesRendered;
+	}
+
+	/***
+	 * Timings of the most recent ticks and frames.
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int ticksPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		int renderEvery = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		ScriptedInput script = args.length > 3 ? ScriptedInput.load(args[3])
+				: null;
+
+		HeadlessGame game = new HeadlessGame(script, 0);
+		game.setTicksPerSecond(ticksPerSecond);
+		game.setRenderEvery(renderEvery);
+
+		long start = System.nanoTime();
+		game.run(ticks);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("[" + Game.NAME + "] " + game.getTickCount() + " ticks, "
+				+ game.getFramesRendered() + " frames in "
+				+ String.format("%.2f", seconds) + "s ("
+				+ String.format("%.0f", game.getTickCount() / seconds)
+				+ " ticks/s)");
+		System.out.println("[" + Game.NAME + "] player at " + game.getPlayer().x()
+				+ ", " + game.getPlayer().y() + " with " + game.getPlayer().getMoney()
+				+ " money");
+		System.out.print(game.getMetrics().report());
+	}
+}
@@ -15,6 +15,13 @@ public class InputHandler implements KeyListener, MouseMotionListener {
 		game.addMouseMotionListener(this);
 	}
 
+	/***
+	 * Input handler that isn't attached to a window. Keys only change when
+	 * toggleKey() is called, e.g. by a ScriptedInput.
+	 */
+	public InputHandler() {
+	}
+
 	public class Key {
 		private int numTimesPressed = 0;
 		private boolean pressed = false;
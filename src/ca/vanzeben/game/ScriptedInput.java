@@ -0,0 +1,142 @@
+package ca.vanzeben.game;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/***
+ * A list of key presses and releases, each at a particular tick, that are fed
+ * to an InputHandler in place of a real keyboard. Used by HeadlessGame.
+ * 
+ * Scripts can be read from a text file with one event per line:
+ * 
+ * <pre>
+ * # tick  action   key
+ * 0       press    RIGHT
+ * 120     release  RIGHT
+ * 120     press    DOWN
+ * </pre>
+ * 
+ * Keys are UP, DOWN, LEFT, RIGHT or W, A, S, D. Lines starting with # are
+ * ignored. Events must be in tick order.
+ */
+public class ScriptedInput {
+	private ArrayList<Event> events = new ArrayList<Event>();
+	private int nextEvent = 0;
+
+	private static class Event {
+		final int tick;
+		final int keyCode;
+		final boolean pressed;
+
+		Event(int tick, int keyCode, boolean pressed) {
+			this.tick = tick;
+			this.keyCode = keyCode;
+			this.pressed = pressed;
+		}
+	}
+
+	public ScriptedInput press(int tick, int keyCode) {
+		return add(tick, keyCode, true);
+	}
+
+	public ScriptedInput release(int tick, int keyCode) {
+		return add(tick, keyCode, false);
+	}
+
+	private ScriptedInput add(int tick, int keyCode, boolean pressed) {
+		if (!events.isEmpty() && events.get(events.size() - 1).tick > tick) {
+			throw new IllegalArgumentException(
+					"Script events must be in tick order, got tick " + tick);
+		}
+		events.add(new Event(tick, keyCode, pressed));
+		return this;
+	}
+
+	/***
+	 * Apply every event scheduled for ticks up to and including tick.
+	 * 
+	 * @param tick
+	 * @param input
+	 */
+	public void apply(int tick, InputHandler input) {
+		while (nextEvent < events.size() && events.get(nextEvent).tick <= tick) {
+			Event e = events.get(nextEvent);
+			input.toggleKey(e.keyCode, e.pressed);
+			nextEvent++;
+		}
+	}
+
+	/***
+	 * Start the script over from the first event.
+	 */
+	public void rewind() {
+		nextEvent = 0;
+	}
+
+	public boolean isFinished() {
+		return nextEvent >= events.size();
+	}
+
+	public static ScriptedInput load(String path) throws IOException {
+		ScriptedInput script = new ScriptedInput();
+
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] parts = line.split("\\s+");
+				if (parts.length != 3) {
+					throw new IOException(path + ":" + lineNumber
+							+ ": expected <tick> <press|release> <key>");
+				}
+
+				int tick = Integer.parseInt(parts[0]);
+				int keyCode = keyCodeFor(parts[2]);
+				if (parts[1].equalsIgnoreCase("press")) {
+					script.press(tick, keyCode);
+				} else if (parts[1].equalsIgnoreCase("release")) {
+					script.release(tick, keyCode);
+				} else {
+					throw new IOException(path + ":" + lineNumber + ": unknown action "
+							+ parts[1]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return script;
+	}
+
+	private static int keyCodeFor(String key) throws IOException {
+		switch (key.toUpperCase()) {
+		case "UP":
+			return KeyEvent.VK_UP;
+		case "DOWN":
+			return KeyEvent.VK_DOWN;
+		case "LEFT":
+			return KeyEvent.VK_LEFT;
+		case "RIGHT":
+			return KeyEvent.VK_RIGHT;
+		case "W":
+			return KeyEvent.VK_W;
+		case "A":
+			return KeyEvent.VK_A;
+		case "S":
+			return KeyEvent.VK_S;
+		case "D":
+			return KeyEvent.VK_D;
+		default:
+			throw new IOException("Unknown key " + key);
+		}
+	}
+}
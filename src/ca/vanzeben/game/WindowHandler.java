@@ -22,7 +22,8 @@ public class WindowHandler implements WindowListener {
 
     @Override
     public void windowClosing(WindowEvent event) {
-
+        // Runs before EXIT_ON_CLOSE exits, so the last changes get saved
+        game.stop();
     }
 
     @Override
@@ -1,12 +1,14 @@
 package ca.vanzeben.game.entities;
 
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 
 public class Coin extends Entity {
 	private int value;
 	private static final SpriteSheet sheet = SpriteSheet.tileSheet;
+	private static final int TILE_ROW = 16, TILE_COL = 12;
 	
 	public Coin(int x, int y, int value, Level level) {
 		super(x, y, sheet, level);
@@ -29,6 +31,13 @@ public class Coin extends Entity {
 
 	@Override
 	public void render(Screen screen) {
-		screen.render(x, y, sheet, 16, 12, Screen.MirrorDirection.NONE);
+		screen.render(renderX(screen), renderY(screen), sheet, TILE_ROW, TILE_COL, Screen.MirrorDirection.NONE);
+	}
+
+	/***
+	 * Add the sprites coins are drawn with.
+	 */
+	public static void addSprites(SpriteAtlas atlas) {
+		atlas.add(sheet, TILE_ROW, TILE_COL);
 	}
 }
@@ -11,12 +11,22 @@ public abstract class Entity {
 	protected int tickCount = 0;
 	protected SpriteSheet sheet;
 	private boolean isDead = false;
+	private int id = 0; // set by the level, 0 = not in a level yet
+
+	// Position at the start of the current tick, for drawing between ticks
+	protected int prevX, prevY;
+
+	// Where the level's SpatialGrid has filed this entity (slot -1 = not filed)
+	private int gridCellX, gridCellY;
+	private int gridSlot = -1;
 	
 	public Entity(int x, int y, SpriteSheet sheet, Level level) {
 		this.x = x;
 		this.y = y;
 		this.level = level;
 		this.sheet = sheet;
+		this.prevX = x;
+		this.prevY = y;
 		
 		this.width = sheet.getSpriteWidth();
 		this.height = sheet.getSpriteHeight();
@@ -35,6 +45,17 @@ public abstract class Entity {
 	}
 	
 	public abstract void tick();
+
+	/***
+	 * Return true if tick() only changes this entity's own state (it may read the
+	 * player and the level's tiles, but must not add entities or touch other
+	 * entities). The level may tick such entities on several threads at once.
+	 * 
+	 * @return
+	 */
+	public boolean canTickInParallel() {
+		return false;
+	}
 	
 	public abstract void render(Screen screen);
 
@@ -70,6 +91,30 @@ public abstract class Entity {
 		return y + this.height / 2;
 	}
 	
+	/***
+	 * Remember where this entity is before it moves. The level calls this at the
+	 * start of each tick.
+	 */
+	public void savePreviousPosition() {
+		prevX = x;
+		prevY = y;
+	}
+
+	/***
+	 * X coordinate to draw this entity at: between where it was at the start of
+	 * the tick and where it is now, by the screen's interpolation.
+	 */
+	public int renderX(Screen screen) {
+		return prevX + Math.round((x - prevX) * screen.getInterpolation());
+	}
+
+	/***
+	 * Y coordinate to draw this entity at, see renderX().
+	 */
+	public int renderY(Screen screen) {
+		return prevY + Math.round((y - prevY) * screen.getInterpolation());
+	}
+
 	public int getX() {
 		return x;
 	}
@@ -102,6 +147,10 @@ public abstract class Entity {
 		this.height = height;
 	}
 
+	public SpriteSheet getSheet() {
+		return sheet;
+	}
+
 	public Level getLevel() {
 		return level;
 	}
@@ -117,5 +166,50 @@ public abstract class Entity {
 	public boolean isDead() {
 		return isDead;
 	}
+
+	/***
+	 * Bring a dead entity back to life so it can be reused.
+	 */
+	protected void revive() {
+		isDead = false;
+		tickCount = 0;
+		id = 0;
+	}
+
+	/***
+	 * Number that identifies this entity in its level, e.g. in save files.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/***
+	 * Used by Level to give this entity its id. Don't call this directly.
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public int getGridCellX() {
+		return gridCellX;
+	}
+
+	public int getGridCellY() {
+		return gridCellY;
+	}
+
+	public int getGridSlot() {
+		return gridSlot;
+	}
+
+	/***
+	 * Used by SpatialGrid to record which cell this entity is filed under. Don't
+	 * call this directly.
+	 */
+	public void setGridLocation(int cellX, int cellY, int slot) {
+		this.gridCellX = cellX;
+		this.gridCellY = cellY;
+		this.gridSlot = slot;
+	}
 	
 }
@@ -0,0 +1,233 @@
+package ca.vanzeben.game.entities;
+
+import java.util.Arrays;
+
+import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.FlowField;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Data-oriented storage for large numbers of simple moving entities (e.g. a
+ * horde of Wumpus). Instead of one object per entity holding its own fields,
+ * the store keeps each field in its own array, indexed by slot, and updates
+ * every entity at once with flat loops (the "systems" below).
+ * 
+ * Each slot also has a StoredEntity, an Entity whose getters and setters read
+ * and write the arrays, so stored entities can still be used anywhere an Entity
+ * is expected (collision checks, the level's SpatialGrid, rendering).
+ * 
+ * Live entities are always packed into slots 0 to size()-1. sweepDead() fills
+ * the slot of a dead entity with the last live one.
+ */
+public class EntityStore {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Level level;
+	private int size = 0;
+
+	int[] x = new int[INITIAL_CAPACITY];
+	int[] y = new int[INITIAL_CAPACITY];
+	int[] prevX = new int[INITIAL_CAPACITY]; // position before the last integrate()
+	int[] prevY = new int[INITIAL_CAPACITY];
+	int[] xSpeed = new int[INITIAL_CAPACITY];
+	int[] ySpeed = new int[INITIAL_CAPACITY];
+	int[] speed = new int[INITIAL_CAPACITY];
+	int[] width = new int[INITIAL_CAPACITY];
+	int[] height = new int[INITIAL_CAPACITY];
+	boolean[] dead = new boolean[INITIAL_CAPACITY];
+	int[] tickCount = new int[INITIAL_CAPACITY];
+
+	// What to draw for each entity
+	SpriteSheet[] sheet = new SpriteSheet[INITIAL_CAPACITY];
+	int[] spriteRow = new int[INITIAL_CAPACITY];
+	int[] spriteCol = new int[INITIAL_CAPACITY];
+
+	private StoredEntity[] views = new StoredEntity[INITIAL_CAPACITY];
+
+	public EntityStore(Level level) {
+		this.level = level;
+	}
+
+	/***
+	 * Add an entity to the store.
+	 * 
+	 * @return the Entity view of the new entity
+	 */
+	public StoredEntity spawn(int x, int y, int speed, SpriteSheet sheet,
+			int spriteRow, int spriteCol) {
+		if (size == this.x.length) {
+			grow(size * 2);
+		}
+
+		int slot = size++;
+		this.x[slot] = x;
+		this.y[slot] = y;
+		this.prevX[slot] = x;
+		this.prevY[slot] = y;
+		this.xSpeed[slot] = 0;
+		this.ySpeed[slot] = 0;
+		this.speed[slot] = speed;
+		this.width[slot] = sheet.getSpriteWidth();
+		this.height[slot] = sheet.getSpriteHeight();
+		this.dead[slot] = false;
+		this.tickCount[slot] = 0;
+		this.sheet[slot] = sheet;
+		this.spriteRow[slot] = spriteRow;
+		this.spriteCol[slot] = spriteCol;
+
+		StoredEntity view = new StoredEntity(this, slot, sheet, level);
+		views[slot] = view;
+		return view;
+	}
+
+	private void grow(int capacity) {
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		prevX = Arrays.copyOf(prevX, capacity);
+		prevY = Arrays.copyOf(prevY, capacity);
+		xSpeed = Arrays.copyOf(xSpeed, capacity);
+		ySpeed = Arrays.copyOf(ySpeed, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		width = Arrays.copyOf(width, capacity);
+		height = Arrays.copyOf(height, capacity);
+		dead = Arrays.copyOf(dead, capacity);
+		tickCount = Arrays.copyOf(tickCount, capacity);
+		sheet = Arrays.copyOf(sheet, capacity);
+		spriteRow = Arrays.copyOf(spriteRow, capacity);
+		spriteCol = Arrays.copyOf(spriteCol, capacity);
+		views = Arrays.copyOf(views, capacity);
+	}
+
+	/***
+	 * Point every live entity at world coordinates (tx, ty), moving at its own
+	 * speed. Same heading as MovingEntity.moveTowardWorldCoordinates().
+	 */
+	public void steerToward(int tx, int ty) {
+		for (int i = 0; i < size; i++) {
+			double angle = Math.atan2(ty - y[i], tx - x[i]);
+			xSpeed[i] = (int) (speed[i] * Math.cos(angle));
+			ySpeed[i] = (int) (speed[i] * Math.sin(angle));
+		}
+	}
+
+	/***
+	 * Point every live entity along a flow field toward world coordinates (tx,
+	 * ty), the same as MovingEntity.moveAlongFlowField(). Entities the field has
+	 * no path for head straight for (tx, ty).
+	 */
+	public void steerAlong(FlowField field, int tx, int ty) {
+		int tileSize = field.getTileSize();
+		for (int i = 0; i < size; i++) {
+			int cx = x[i] + width[i] / 2;
+			int cy = y[i] + height[i] / 2;
+			int direction = field.getDirection(cx, cy);
+			if (direction == FlowField.NONE) {
+				double angle = Math.atan2(ty - y[i], tx - x[i]);
+				xSpeed[i] = (int) (speed[i] * Math.cos(angle));
+				ySpeed[i] = (int) (speed[i] * Math.sin(angle));
+				continue;
+			}
+
+			int dx = (Math.floorDiv(cx, tileSize) + FlowField.getStepX(direction))
+					* tileSize + tileSize / 2 - cx;
+			int dy = (Math.floorDiv(cy, tileSize) + FlowField.getStepY(direction))
+					* tileSize + tileSize / 2 - cy;
+			double length = Math.sqrt((double) dx * dx + (double) dy * dy);
+			xSpeed[i] = (int) (speed[i] * dx / length);
+			ySpeed[i] = (int) (speed[i] * dy / length);
+		}
+	}
+
+	/***
+	 * Shorten each entity's next step so it stops against any solid tile in the
+	 * way and slides along it, the same as MovingEntity.moveAndSlide().
+	 */
+	public void resolveTileCollisions() {
+		int boxWidth = MovingEntity.COLLISION_WIDTH;
+		int boxHeight = MovingEntity.COLLISION_HEIGHT;
+		for (int i = 0; i < size; i++) {
+			int boxX = x[i] + width[i] / 2 - MovingEntity.COLLISION_HALF_WIDTH;
+			int boxY = y[i] + height[i] / 2 - MovingEntity.COLLISION_HALF_HEIGHT;
+
+			int dx = level.sweepX(boxX, boxY, boxWidth, boxHeight, xSpeed[i]);
+			ySpeed[i] = level.sweepY(boxX + dx, boxY, boxWidth, boxHeight,
+					ySpeed[i]);
+			xSpeed[i] = dx;
+		}
+	}
+
+	/***
+	 * Move every entity by its speed.
+	 */
+	public void integrate() {
+		for (int i = 0; i < size; i++) {
+			prevX[i] = x[i];
+			prevY[i] = y[i];
+			x[i] += xSpeed[i];
+			y[i] += ySpeed[i];
+			tickCount[i]++;
+		}
+	}
+
+	/***
+	 * Remove all entities marked as dead. The views of removed entities are
+	 * detached from the store and should be dropped.
+	 * 
+	 * @return number of entities removed
+	 */
+	public int sweepDead() {
+		int removed = 0;
+
+		// Walk backwards so the entity swapped into a hole has already been checked
+		for (int i = size - 1; i >= 0; i--) {
+			if (dead[i]) {
+				moveSlot(size - 1, i);
+				size--;
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	// Move the entity in slot from into slot to, overwriting it
+	private void moveSlot(int from, int to) {
+		views[to].detach();
+
+		if (from != to) {
+			x[to] = x[from];
+			y[to] = y[from];
+			prevX[to] = prevX[from];
+			prevY[to] = prevY[from];
+			xSpeed[to] = xSpeed[from];
+			ySpeed[to] = ySpeed[from];
+			speed[to] = speed[from];
+			width[to] = width[from];
+			height[to] = height[from];
+			dead[to] = dead[from];
+			tickCount[to] = tickCount[from];
+			sheet[to] = sheet[from];
+			spriteRow[to] = spriteRow[from];
+			spriteCol[to] = spriteCol[from];
+			views[to] = views[from];
+			views[to].slot = to;
+		}
+
+		views[from] = null;
+		sheet[from] = null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/***
+	 * Entity view of the entity in slot.
+	 */
+	public StoredEntity get(int slot) {
+		return views[slot];
+	}
+
+	public boolean isDead(int slot) {
+		return dead[slot];
+	}
+}
@@ -1,11 +1,14 @@
 package ca.vanzeben.game.entities;
 
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 
 public class Fireball extends MovingEntity {
 	private static final SpriteSheet sheet = SpriteSheet.DungeonCrawl;
+	private static final int TILE_ROW = 6, TILE_COL = 37;
+	private static final int LIFETIME_TICKS = 200;
 	private double angle;
 	
 	public Fireball(int x, int y, Level level, int speed) {
@@ -14,19 +17,43 @@ public class Fireball extends MovingEntity {
 		angle = angleTowardEntity(level.getPlayer());
 	}
 
+	/***
+	 * Reset a dead fireball so it can be fired again (see FireballPool).
+	 */
+	void respawn(int x, int y, Level level, int speed) {
+		revive();
+		this.x = x;
+		this.y = y;
+		this.level = level;
+		this.speed = speed;
+		savePreviousPosition();
+		
+		angle = angleTowardEntity(level.getPlayer());
+	}
+
 	@Override
 	public void render(Screen screen) {
-		screen.render(x, y, sheet, 6, 37, Screen.MirrorDirection.NONE);
+		screen.render(renderX(screen), renderY(screen), sheet, TILE_ROW, TILE_COL, Screen.MirrorDirection.NONE);
+	}
+
+	/***
+	 * Add the sprites fireballs are drawn with.
+	 */
+	public static void addSprites(SpriteAtlas atlas) {
+		atlas.add(sheet, TILE_ROW, TILE_COL);
+	}
+
+	@Override
+	public boolean canTickInParallel() {
+		return true;
 	}
 
 	@Override
 	public void tick() {
 		move();
 		tickCount++;
-		int ticks = 0;
-		ticks++;
 		
-		if (ticks > 200) {
+		if (tickCount > LIFETIME_TICKS) {
 			markAsDead();
 		}
 		
@@ -34,6 +61,11 @@ public class Fireball extends MovingEntity {
 
 	@Override
 	public void move() {
-		this.moveInDirection(angle);
+		// Same rounding as moveInDirection(), but stopping at walls
+		int dx = (int) (x + speed * Math.cos(angle)) - x;
+		int dy = (int) (y + speed * Math.sin(angle)) - y;
+		if (moveAndSlide(dx, dy)) {
+			markAsDead();
+		}
 	}
 }
@@ -0,0 +1,71 @@
+package ca.vanzeben.game.entities;
+
+import java.util.Arrays;
+
+import ca.vanzeben.game.level.Level;
+
+/***
+ * Keeps dead fireballs around so new ones can reuse them instead of being
+ * allocated. Towers fire every tick, so once the pool has warmed up spawning
+ * fireballs allocates nothing.
+ */
+public class FireballPool {
+	public static final int DEFAULT_MAX_SIZE = 4096;
+
+	private final int maxSize;
+	private Fireball[] free = new Fireball[64];
+	private int numFree = 0;
+
+	private long created = 0;
+	private long reused = 0;
+
+	public FireballPool() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public FireballPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/***
+	 * Return a live fireball at x, y aimed at the level's player, reusing a dead
+	 * one if there is one.
+	 */
+	public Fireball obtain(int x, int y, Level level, int speed) {
+		if (numFree == 0) {
+			created++;
+			return new Fireball(x, y, level, speed);
+		}
+
+		reused++;
+		Fireball f = free[--numFree];
+		free[numFree] = null;
+		f.respawn(x, y, level, speed);
+		return f;
+	}
+
+	/***
+	 * Hand a dead fireball back to the pool. It must no longer be in the level.
+	 */
+	public void free(Fireball f) {
+		if (numFree == maxSize) {
+			return; // let the garbage collector have it
+		}
+		if (numFree == free.length) {
+			free = Arrays.copyOf(free, Math.min(maxSize, numFree * 2));
+		}
+		free[numFree++] = f;
+	}
+
+	public int getNumFree() {
+		return numFree;
+	}
+
+	public long getNumCreated() {
+		return created;
+	}
+
+	public long getNumReused() {
+		return reused;
+	}
+}
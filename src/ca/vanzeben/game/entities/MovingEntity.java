@@ -1,11 +1,17 @@
 package ca.vanzeben.game.entities;
 
 import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.FlowField;
 import ca.vanzeben.game.level.Level;
-import ca.vanzeben.game.level.tiles.Tile;
 
 public abstract class MovingEntity extends Entity {
 	protected int xSpeed, ySpeed, speed, drag;
+
+	// Size of the box around an entity's center that must stay off solid tiles
+	static final int COLLISION_HALF_WIDTH = 4;
+	static final int COLLISION_HALF_HEIGHT = 10;
+	static final int COLLISION_WIDTH = COLLISION_HALF_WIDTH * 2 + 1;
+	static final int COLLISION_HEIGHT = COLLISION_HALF_HEIGHT * 2 + 1;
 	
 	public MovingEntity(int x, int y, int speed, SpriteSheet sheet, Level level) {
 		super(x, y, sheet, level);
@@ -61,6 +67,33 @@ public abstract class MovingEntity extends Entity {
 		moveTowardWorldCoordinates(entity.centerX(), entity.centerY());
 	}
 	
+	/***
+	 * Move toward an entity the way a flow field leading to it says, so walls
+	 * are walked around. Heads for the center of the next tile along the path,
+	 * which keeps the entity lined up with doorways. Heads straight for the
+	 * entity if the field has no path from here.
+	 */
+	public void moveAlongFlowField(FlowField field, Entity entity) {
+		int cx = centerX();
+		int cy = centerY();
+		int direction = field == null ? FlowField.NONE : field.getDirection(cx, cy);
+		if (direction == FlowField.NONE) {
+			moveTowardEntity(entity);
+			return;
+		}
+
+		int tileSize = field.getTileSize();
+		int dx = (Math.floorDiv(cx, tileSize) + FlowField.getStepX(direction)) * tileSize
+				+ tileSize / 2 - cx;
+		int dy = (Math.floorDiv(cy, tileSize) + FlowField.getStepY(direction)) * tileSize
+				+ tileSize / 2 - cy;
+		double length = Math.sqrt((double) dx * dx + (double) dy * dy);
+		xSpeed = (int) (speed * dx / length);
+		ySpeed = (int) (speed * dy / length);
+
+		updateCoordinates();
+	}
+
 	public void moveInDirection(double angle) {
 		x += speed * Math.cos(angle);
 		y += speed * Math.sin(angle);
@@ -79,25 +112,36 @@ public abstract class MovingEntity extends Entity {
 	}
 	
 	private void updateCoordinates() {
-		if (willCollideWithTile(x, y)) {
-			return;
-		}
-		
-		x += xSpeed;
-		y += ySpeed;
+		moveAndSlide(xSpeed, ySpeed);
 	}
 
-	protected boolean willCollideWithTile(int dx, int dy) {
-		Tile rightTile = level.getTileTypeAtWorldCoordinates(centerX() + 4 + dx, centerY() + dy);
-		Tile leftTile = level.getTileTypeAtWorldCoordinates(centerX() - 4 + dx, centerY() + dy);
-		Tile topTile = level.getTileTypeAtWorldCoordinates(centerX() + dx, centerY() + 10 + dy);
-		Tile bottomTile = level.getTileTypeAtWorldCoordinates(centerX() + dx, centerY() - 10 + dy);
+	/***
+	 * Move by up to dx, dy. If a solid tile is in the way the collision box stops
+	 * against it and the rest of the move carries on along the wall: x is
+	 * resolved first, then y from the new x. Every tile crossed is checked, so
+	 * fast entities don't pass through walls.
+	 * 
+	 * @return true if a wall stopped any part of the move
+	 */
+	protected boolean moveAndSlide(int dx, int dy) {
+		int boxX = centerX() - COLLISION_HALF_WIDTH;
+		int boxY = centerY() - COLLISION_HALF_HEIGHT;
 
-		if (rightTile.isSolid() || leftTile.isSolid() 
-				|| topTile.isSolid() || bottomTile.isSolid()) {
-			return true;
-			
-		}
-		return false;
+		int movedX = level.sweepX(boxX, boxY, COLLISION_WIDTH, COLLISION_HEIGHT, dx);
+		int movedY = level.sweepY(boxX + movedX, boxY, COLLISION_WIDTH,
+				COLLISION_HEIGHT, dy);
+		x += movedX;
+		y += movedY;
+		return movedX != dx || movedY != dy;
+	}
+
+	/***
+	 * True if moving by dx, dy would put the collision box around the entity's
+	 * center on a solid tile.
+	 */
+	protected boolean willCollideWithTile(int dx, int dy) {
+		return level.isAreaSolid(centerX() - COLLISION_HALF_WIDTH + dx,
+				centerY() - COLLISION_HALF_HEIGHT + dy, COLLISION_WIDTH,
+				COLLISION_HEIGHT);
 	}
 }
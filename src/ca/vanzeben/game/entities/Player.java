@@ -4,6 +4,7 @@ import ca.vanzeben.game.Game;
 import ca.vanzeben.game.InputHandler;
 import ca.vanzeben.game.gfx.Font;
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 import ca.vanzeben.game.level.tiles.Tile;
@@ -23,6 +24,11 @@ public class Player extends MovingEntity {
 	private int money;
 	private static final int PLAYER_SPEED = 15;
 
+	// Sprite sheet row, col of the standing animation frames and of swimming
+	private static final int[][] STANDING_SPRITES = { { 0, 0 }, { 0, 1 },
+			{ 0, 2 }, { 0, 3 } };
+	private static final int SWIMMING_ROW = 6, SWIMMING_COL = 4;
+
 	public Player(Level level, int x, int y, InputHandler input, String username, SpriteSheet sheet) {
 		super(x, y, PLAYER_SPEED, sheet, level);
 		this.input = input;
@@ -66,32 +72,27 @@ public class Player extends MovingEntity {
 	}
 
 	/***
-	 * Move the player by dx, dy
+	 * Move the player by dx, dy, sliding along any wall in the way
 	 * 
 	 * @param dx
 	 * @param dy
 	 */
 	public void move(int dx, int dy) {
-		if (dx != 0 && dy != 0) {
-			move(dx, 0);
-			move(0, dy);
-			numSteps--;
-			return;
-		}
-
 		numSteps++;
-		if (!willCollideWithTile(dx, dy)) {
-			if (dy < 0)
-				movingDir = 0;
-			if (dy > 0)
-				movingDir = 1;
-			if (dx < 0)
-				movingDir = 2;
-			if (dx > 0)
-				movingDir = 3;
-			x += dx;
-			y += dy;
-		}
+
+		int startX = x;
+		int startY = y;
+		moveAndSlide(dx, dy);
+
+		// Face the way we actually went, vertical movement taking priority
+		if (x < startX)
+			movingDir = 2;
+		if (x > startX)
+			movingDir = 3;
+		if (y < startY)
+			movingDir = 0;
+		if (y > startY)
+			movingDir = 1;
 	}
 
 	public Tile getCurrentTileType() {
@@ -121,11 +122,15 @@ public class Player extends MovingEntity {
 	}
 
 	public void render(Screen screen) {
+		int drawX = renderX(screen);
+		int drawY = renderY(screen);
+
 		Tile current = this.getCurrentTileType();
 		if (current == Tile.WATER) {
-			screen.render(x, y, sheet, 6, 4, Screen.MirrorDirection.NONE);
+			screen.render(drawX, drawY, sheet, SWIMMING_ROW, SWIMMING_COL,
+					Screen.MirrorDirection.NONE);
 		} else {
-			renderAnimatedStanding(screen);
+			renderAnimatedStanding(screen, drawX, drawY);
 		}
 		
 		if (debug) {
@@ -133,21 +138,34 @@ public class Player extends MovingEntity {
 		}
 
 		if (username != null) {
-			screen.renderTextAtWorldCoordinates(username, Font.DEFAULT,
-					centerX() - Font.DEFAULT.getWidthOf(username) / 2, y - 10, 1);
+			screen.renderCachedTextAtWorldCoordinates(username, Font.DEFAULT,
+					drawX + width / 2 - Font.DEFAULT.getWidthOf(username) / 2, drawY - 10, 1);
 		}
 	}
 
-	private void renderAnimatedStanding(Screen screen) {
+	private void renderAnimatedStanding(Screen screen, int drawX, int drawY) {
+		int[] frame;
 		if (tickCount % 60 < 15) {
-			screen.render(x, y, sheet, 0, 0, Screen.MirrorDirection.NONE);
+			frame = STANDING_SPRITES[0];
 		} else if (15 <= tickCount % 60 && tickCount % 60 < 30) {
-			screen.render(x, y, sheet, 0, 1, Screen.MirrorDirection.NONE);
+			frame = STANDING_SPRITES[1];
 		} else if (30 <= tickCount % 60 && tickCount % 60 < 45) {
-			screen.render(x, y, sheet, 0, 2, Screen.MirrorDirection.NONE);
+			frame = STANDING_SPRITES[2];
 		} else {
-			screen.render(x, y, sheet, 0, 3, Screen.MirrorDirection.NONE);
+			frame = STANDING_SPRITES[3];
+		}
+		screen.render(drawX, drawY, sheet, frame[0], frame[1],
+				Screen.MirrorDirection.NONE);
+	}
+
+	/***
+	 * Add the sprites players drawn from sheet use.
+	 */
+	public static void addSprites(SpriteAtlas atlas, SpriteSheet sheet) {
+		for (int[] frame : STANDING_SPRITES) {
+			atlas.add(sheet, frame[0], frame[1]);
 		}
+		atlas.add(sheet, SWIMMING_ROW, SWIMMING_COL);
 	}
 
 
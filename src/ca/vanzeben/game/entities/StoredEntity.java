@@ -0,0 +1,241 @@
+package ca.vanzeben.game.entities;
+
+import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteSheet;
+import ca.vanzeben.game.level.Level;
+
+/***
+ * An Entity whose state lives in an EntityStore. All getters and setters read
+ * and write the store's arrays, so this can be passed to anything that works
+ * with an Entity. tick() does nothing: stored entities are updated all at once
+ * by the store.
+ * 
+ * Once the entity is removed from the store (see EntityStore.sweepDead()) the
+ * view keeps working from the values the entity had when it was removed. It
+ * is dead and no longer moves.
+ */
+public class StoredEntity extends Entity {
+	private final EntityStore store;
+	int slot; // -1 once the entity has been removed from the store
+	private int spriteRow, spriteCol; // only used once removed
+
+	StoredEntity(EntityStore store, int slot, SpriteSheet sheet, Level level) {
+		super(0, 0, sheet, level);
+		this.store = store;
+		this.slot = slot;
+	}
+
+	// Called by the store just before the entity's slot is reused: keep its
+	// last values in the Entity fields, which the accessors fall back to
+	void detach() {
+		if (slot < 0) {
+			return;
+		}
+		x = store.x[slot];
+		y = store.y[slot];
+		prevX = store.prevX[slot];
+		prevY = store.prevY[slot];
+		width = store.width[slot];
+		height = store.height[slot];
+		sheet = store.sheet[slot];
+		spriteRow = store.spriteRow[slot];
+		spriteCol = store.spriteCol[slot];
+		slot = -1;
+	}
+
+	@Override
+	public void tick() {
+	}
+
+	@Override
+	public void render(Screen screen) {
+		if (slot < 0) {
+			screen.render(renderX(screen), renderY(screen), sheet, spriteRow, spriteCol,
+					Screen.MirrorDirection.NONE);
+			return;
+		}
+		screen.render(renderX(screen), renderY(screen), store.sheet[slot],
+				store.spriteRow[slot], store.spriteCol[slot],
+				Screen.MirrorDirection.NONE);
+	}
+
+	/***
+	 * Does nothing: the store remembers previous positions itself, in
+	 * integrate().
+	 */
+	@Override
+	public void savePreviousPosition() {
+	}
+
+	@Override
+	public int renderX(Screen screen) {
+		if (slot < 0) {
+			return super.renderX(screen);
+		}
+		return store.prevX[slot] + Math.round((store.x[slot] - store.prevX[slot]) * screen.getInterpolation());
+	}
+
+	@Override
+	public int renderY(Screen screen) {
+		if (slot < 0) {
+			return super.renderY(screen);
+		}
+		return store.prevY[slot] + Math.round((store.y[slot] - store.prevY[slot]) * screen.getInterpolation());
+	}
+
+	public boolean isInStore() {
+		return slot >= 0;
+	}
+
+	@Override
+	public int x() {
+		if (slot < 0) {
+			return super.x();
+		}
+		return store.x[slot];
+	}
+
+	@Override
+	public int leftX() {
+		if (slot < 0) {
+			return super.leftX();
+		}
+		return store.x[slot];
+	}
+
+	@Override
+	public int rightX() {
+		if (slot < 0) {
+			return super.rightX();
+		}
+		return store.x[slot] + store.width[slot];
+	}
+
+	@Override
+	public int y() {
+		if (slot < 0) {
+			return super.y();
+		}
+		return store.y[slot];
+	}
+
+	@Override
+	public int topY() {
+		if (slot < 0) {
+			return super.topY();
+		}
+		return store.y[slot];
+	}
+
+	@Override
+	public int bottomY() {
+		if (slot < 0) {
+			return super.bottomY();
+		}
+		return store.y[slot] + store.height[slot];
+	}
+
+	@Override
+	public int centerX() {
+		if (slot < 0) {
+			return super.centerX();
+		}
+		return store.x[slot] + store.width[slot] / 2;
+	}
+
+	@Override
+	public int centerY() {
+		if (slot < 0) {
+			return super.centerY();
+		}
+		return store.y[slot] + store.height[slot] / 2;
+	}
+
+	@Override
+	public int getX() {
+		if (slot < 0) {
+			return super.getX();
+		}
+		return store.x[slot];
+	}
+
+	@Override
+	public void setX(int x) {
+		if (slot < 0) {
+			super.setX(x);
+			return;
+		}
+		store.x[slot] = x;
+	}
+
+	@Override
+	public int getY() {
+		if (slot < 0) {
+			return super.getY();
+		}
+		return store.y[slot];
+	}
+
+	@Override
+	public void setY(int y) {
+		if (slot < 0) {
+			super.setY(y);
+			return;
+		}
+		store.y[slot] = y;
+	}
+
+	@Override
+	public int getWidth() {
+		if (slot < 0) {
+			return super.getWidth();
+		}
+		return store.width[slot];
+	}
+
+	@Override
+	public void setWidth(int width) {
+		if (slot < 0) {
+			super.setWidth(width);
+			return;
+		}
+		store.width[slot] = width;
+	}
+
+	@Override
+	public int getHeight() {
+		if (slot < 0) {
+			return super.getHeight();
+		}
+		return store.height[slot];
+	}
+
+	@Override
+	public void setHeight(int height) {
+		if (slot < 0) {
+			super.setHeight(height);
+			return;
+		}
+		store.height[slot] = height;
+	}
+
+	public int getXSpeed() {
+		return slot < 0 ? 0 : store.xSpeed[slot];
+	}
+
+	public int getYSpeed() {
+		return slot < 0 ? 0 : store.ySpeed[slot];
+	}
+
+	@Override
+	public void markAsDead() {
+		if (slot >= 0) {
+			store.dead[slot] = true;
+		}
+	}
+
+	@Override
+	public boolean isDead() {
+		return slot < 0 || store.dead[slot];
+	}
+}
@@ -1,11 +1,13 @@
 package ca.vanzeben.game.entities;
 
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 
 public class Tower extends Entity {
 	private static final SpriteSheet sheet = SpriteSheet.DungeonCrawl;
+	private static final int TILE_ROW = 11, TILE_COL = 44;
 	private Entity target;
 	
 	public Tower(int x, int y, Level level) {
@@ -21,8 +23,15 @@ public class Tower extends Entity {
 
 	@Override
 	public void render(Screen screen) {
-		screen.render(x, y, sheet, 11, 44, Screen.MirrorDirection.NONE);
+		screen.render(renderX(screen), renderY(screen), sheet, TILE_ROW, TILE_COL, Screen.MirrorDirection.NONE);
 		
 	}
 
+	/***
+	 * Add the sprites towers are drawn with.
+	 */
+	public static void addSprites(SpriteAtlas atlas) {
+		atlas.add(sheet, TILE_ROW, TILE_COL);
+	}
+
 }
@@ -1,12 +1,13 @@
 package ca.vanzeben.game.entities;
 
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 
 public class Wumpus extends MovingEntity {
-	private static final int WUMPUS_TILE_ROW = 4;
-	private static final int WUMPUS_TILE_COL = 0;
+	public static final int WUMPUS_TILE_ROW = 4;
+	public static final int WUMPUS_TILE_COL = 0;
 	private static final SpriteSheet sheet = SpriteSheet.DungeonCrawl;
 	private Entity target;
 	
@@ -16,6 +17,11 @@ public class Wumpus extends MovingEntity {
 		this.target = target;
 	}
 
+	@Override
+	public boolean canTickInParallel() {
+		return true;
+	}
+
 	public void tick() {
 		tickCount++;
 		
@@ -24,14 +30,22 @@ public class Wumpus extends MovingEntity {
 	
 	@Override
 	public void render(Screen screen) {
-		screen.render(x, y, sheet, WUMPUS_TILE_ROW, WUMPUS_TILE_COL, Screen.MirrorDirection.NONE);
+		screen.render(renderX(screen), renderY(screen), sheet, WUMPUS_TILE_ROW, WUMPUS_TILE_COL, Screen.MirrorDirection.NONE);
+	}
+
+	/***
+	 * Add the sprites wumpus (including stored ones) are drawn with.
+	 */
+	public static void addSprites(SpriteAtlas atlas) {
+		atlas.add(sheet, WUMPUS_TILE_ROW, WUMPUS_TILE_COL);
 	}
 
 	@Override
 	public void move() {
 //		this.moveRandom();
 //		this.moveTowardWorldCoordinates(10, 10);
-		this.moveTowardEntity(target);
+//		this.moveTowardEntity(target);
+		this.moveAlongFlowField(level.getFlowFieldToward(target), target);
 	}
 
 }
@@ -0,0 +1,89 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/***
+ * Creates images in the same format as the display so Java2D can keep a copy
+ * of them in video memory and draw them without converting pixels every time.
+ *
+ * This only works for images whose pixel array is never touched directly:
+ * calling getData() on an image's DataBuffer stops it from being accelerated
+ * for good. Screen only does that in RenderMode.PIXELS.
+ *
+ * When there is no display (e.g. headless Linux) plain TYPE_INT_* images are
+ * created instead, which is what the game used before.
+ */
+public class AcceleratedImages {
+	private static GraphicsConfiguration configuration;
+	private static boolean checked = false;
+
+	private AcceleratedImages() {
+	}
+
+	/***
+	 * The display's graphics configuration, or null if there is no display.
+	 */
+	public static synchronized GraphicsConfiguration getConfiguration() {
+		if (!checked) {
+			checked = true;
+			if (!GraphicsEnvironment.isHeadless()) {
+				try {
+					configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+							.getDefaultScreenDevice().getDefaultConfiguration();
+				} catch (RuntimeException e) {
+					// e.g. no X server even though the JVM isn't headless
+					System.err.println("No display to accelerate images for: " + e);
+					configuration = null;
+				}
+			}
+		}
+		return configuration;
+	}
+
+	/***
+	 * True if images can be created in the display's format.
+	 */
+	public static boolean isAvailable() {
+		return getConfiguration() != null;
+	}
+
+	/***
+	 * Create a blank image.
+	 *
+	 * @param width
+	 * @param height
+	 * @param transparency
+	 *          Transparency.OPAQUE, BITMASK or TRANSLUCENT
+	 */
+	public static BufferedImage create(int width, int height, int transparency) {
+		GraphicsConfiguration gc = getConfiguration();
+		if (gc != null) {
+			return gc.createCompatibleImage(width, height, transparency);
+		}
+		return new BufferedImage(width, height,
+				transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+						: BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/***
+	 * Return a copy of image in the display's format, or image itself if it
+	 * already is in that format or there is no display.
+	 */
+	public static BufferedImage toCompatible(BufferedImage image) {
+		GraphicsConfiguration gc = getConfiguration();
+		if (gc == null || image.getColorModel().equals(gc.getColorModel(image.getTransparency()))) {
+			return image;
+		}
+
+		BufferedImage copy = gc.createCompatibleImage(image.getWidth(), image.getHeight(),
+				image.getTransparency());
+		Graphics2D g = copy.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+}
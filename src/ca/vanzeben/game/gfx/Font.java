@@ -1,5 +1,10 @@
 package ca.vanzeben.game.gfx;
 
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
 public class Font {
 	public static Font DEFAULT = new Font(
 			new SpriteSheet("font", "/sprite_sheet.png", 32, 32));
@@ -7,7 +12,27 @@ public class Font {
 	private static String chars = "" + "ABCDEFGHIJKLMNOPQRSTUVWXYZ      "
 			+ "0123456789.,:;'\"!?$%()-=+/      ";
 
+	// Glyph for each ASCII character, -1 for none (nothing is drawn)
+	private static final int[] glyphs = new int[128];
+
+	static {
+		Arrays.fill(glyphs, -1);
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			if (c != ' ') {
+				glyphs[c] = i;
+				glyphs[Character.toLowerCase(c)] = i;
+			}
+		}
+	}
+
+	private static final int GLYPH_ROW = 30; // row of the sprite sheet the glyphs start on
+
 	private SpriteSheet fontSheet;
+
+	// Glyphs pre-scaled to each scale used so far, by scale
+	private GlyphAtlas[] atlases = new GlyphAtlas[0];
+	private TextCache textCache = new TextCache();
 	
 	public Font(SpriteSheet font) {
 		this.fontSheet = font;
@@ -18,19 +43,106 @@ public class Font {
 				numTilesWidth);
 	}
 
+	public SpriteSheet getSheet() {
+		return fontSheet;
+	}
+
+	/***
+	 * Add the sprites of every glyph this font draws into its glyph atlases
+	 * (blank ones included).
+	 */
+	public void addGlyphsTo(SpriteAtlas atlas) {
+		int firstTile = GLYPH_ROW * fontSheet.getNumSpritesWidth();
+		for (int i = 0; i < chars.length(); i++) {
+			int tile = firstTile + i;
+			atlas.add(fontSheet, tile / fontSheet.getNumSpritesWidth(),
+					tile % fontSheet.getNumSpritesWidth());
+		}
+	}
+
 	public void render(String msg, Screen screen, int x, int y, int scale) {
-		msg = msg.toUpperCase();
+		GlyphAtlas atlas = getAtlas(scale);
+		int glyphWidth = atlas.getGlyphWidth();
 
 		for (int i = 0; i < msg.length(); i++) {
-			int charIndex = chars.indexOf(msg.charAt(i));
-			if (charIndex >= 0)
-				screen.render(x + (i * fontSheet.getSpriteWidth()*scale), y, fontSheet, charIndex + 30 * fontSheet.getNumSpritesWidth(),
-						Screen.MirrorDirection.NONE, fontSheet.getSpriteWidth() * scale,
-						fontSheet.getSpriteHeight() * scale);
+			int glyph = glyphFor(msg.charAt(i));
+			if (glyph >= 0)
+				atlas.render(screen, glyph, x + i * glyphWidth, y);
+		}
+	}
+
+	/***
+	 * Draw a number without building a string for it.
+	 * 
+	 * @return x coordinate just after the last digit
+	 */
+	public int renderNumber(int value, Screen screen, int x, int y, int scale) {
+		GlyphAtlas atlas = getAtlas(scale);
+		int glyphWidth = atlas.getGlyphWidth();
+
+		long n = value;
+		if (n < 0) {
+			atlas.render(screen, glyphs['-'], x, y);
+			x += glyphWidth;
+			n = -n;
+		}
+
+		int numDigits = 1;
+		for (long rest = n / 10; rest > 0; rest /= 10) {
+			numDigits++;
+		}
+
+		int digitX = x + (numDigits - 1) * glyphWidth;
+		do {
+			atlas.render(screen, glyphs['0' + (int) (n % 10)], digitX, y);
+			digitX -= glyphWidth;
+			n /= 10;
+		} while (n > 0);
+
+		return x + numDigits * glyphWidth;
+	}
+
+	/***
+	 * Draw text that is drawn the same way frame after frame (a title, a name).
+	 * The whole string is drawn into an image once and reused after that.
+	 */
+	public void renderCached(String msg, Screen screen, int x, int y, int scale) {
+		BufferedImage image = textCache.get(msg, scale);
+		if (image == null) {
+			GlyphAtlas atlas = getAtlas(scale);
+			int glyphWidth = atlas.getGlyphWidth();
+
+			image = AcceleratedImages.create(Math.max(1, msg.length() * glyphWidth),
+					atlas.getGlyphHeight(), Transparency.TRANSLUCENT);
+			Graphics g = image.getGraphics();
+			for (int i = 0; i < msg.length(); i++) {
+				int glyph = glyphFor(msg.charAt(i));
+				if (glyph >= 0) {
+					atlas.copyTo(g, glyph, i * glyphWidth, 0);
+				}
+			}
+			g.dispose();
+			textCache.put(msg, scale, image);
+		}
+		screen.renderImage(image, x, y);
+	}
+
+	private static int glyphFor(char c) {
+		return c < glyphs.length ? glyphs[c] : -1;
+	}
+
+	private synchronized GlyphAtlas getAtlas(int scale) {
+		if (scale >= atlases.length) {
+			atlases = Arrays.copyOf(atlases, scale + 1);
+		}
+		if (atlases[scale] == null) {
+			atlases[scale] = new GlyphAtlas(fontSheet, GLYPH_ROW * fontSheet.getNumSpritesWidth(), chars.length(),
+					scale);
 		}
+		return atlases[scale];
 	}
 
 	public int getWidthOf(String msg) {
 		return msg.length()*fontSheet.getSpriteWidth();
 	}
-}
\ No newline at end of file
+}
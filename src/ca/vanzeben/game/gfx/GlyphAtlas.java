@@ -0,0 +1,70 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.Graphics;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/***
+ * Every glyph of a font scaled up to one size ahead of time and laid out side
+ * by side in a single image. Drawing a glyph is then a plain copy of part of
+ * the image, with no scaling.
+ */
+public class GlyphAtlas {
+	private final BufferedImage image;
+	private final int glyphWidth, glyphHeight;
+	private final int scale;
+
+	/***
+	 * @param fontSheet
+	 *          sprite sheet holding the glyphs
+	 * @param firstGlyphTile
+	 *          tile id (row * sprites per row + column) of the first glyph
+	 * @param numGlyphs
+	 * @param scale
+	 */
+	public GlyphAtlas(SpriteSheet fontSheet, int firstGlyphTile, int numGlyphs, int scale) {
+		this.scale = scale;
+		this.glyphWidth = fontSheet.getSpriteWidth() * scale;
+		this.glyphHeight = fontSheet.getSpriteHeight() * scale;
+		this.image = AcceleratedImages.create(glyphWidth * numGlyphs, glyphHeight, Transparency.TRANSLUCENT);
+
+		// Scale the glyphs exactly the way Screen.render() would
+		Screen bakeScreen = new Screen(image, new SpriteCache(numGlyphs));
+		for (int i = 0; i < numGlyphs; i++) {
+			bakeScreen.render(i * glyphWidth, 0, fontSheet, firstGlyphTile + i, Screen.MirrorDirection.NONE,
+					glyphWidth, glyphHeight);
+		}
+	}
+
+	/***
+	 * Draw a glyph with its upper left corner at world coordinates (x, y).
+	 */
+	public void render(Screen screen, int glyph, int x, int y) {
+		screen.renderImageRegion(image, glyph * glyphWidth, 0, glyphWidth, glyphHeight, x, y);
+	}
+
+	/***
+	 * Copy a glyph to (x, y) of another image's graphics, e.g. to build a strip
+	 * of text.
+	 */
+	public void copyTo(Graphics dest, int glyph, int x, int y) {
+		dest.drawImage(image, x, y, x + glyphWidth, y + glyphHeight, glyph * glyphWidth, 0,
+				(glyph + 1) * glyphWidth, glyphHeight, null);
+	}
+
+	public int getGlyphWidth() {
+		return glyphWidth;
+	}
+
+	public int getGlyphHeight() {
+		return glyphHeight;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+}
@@ -0,0 +1,61 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.Image;
+
+/***
+ * A Screen that doesn't draw anything. Sprites, images and tile highlights are
+ * recorded into a RenderSnapshot instead, so the game thread can "draw" its
+ * entities and a render thread can draw them for real later.
+ * 
+ * Coordinates are recorded in world coordinates, so the recording screen's
+ * position only matters to code that asks where the screen is.
+ */
+public class RecordingScreen extends Screen {
+	private RenderSnapshot snapshot;
+
+	/***
+	 * @param width
+	 * @param height
+	 *          size of the screen the snapshots will be drawn on
+	 */
+	public RecordingScreen(int width, int height) {
+		super(width, height);
+	}
+
+	/***
+	 * Record into snapshot from now on.
+	 */
+	public void setSnapshot(RenderSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public RenderSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public void render(int xPos, int yPos, SpriteSheet sheet, int tileRow, int tileCol, MirrorDirection mirrorDir,
+			int displayWidth, int displayHeight) {
+		snapshot.addSprite(xPos, yPos, sheet, tileRow, tileCol, mirrorDir, displayWidth, displayHeight);
+	}
+
+	@Override
+	public void renderImage(Image image, int xPos, int yPos) {
+		snapshot.addImage(xPos, yPos, image, 0, 0, image.getWidth(null), image.getHeight(null));
+	}
+
+	@Override
+	public void renderImageRegion(Image image, int sourceX, int sourceY, int width, int height, int xPos,
+			int yPos) {
+		snapshot.addImage(xPos, yPos, image, sourceX, sourceY, width, height);
+	}
+
+	@Override
+	public void highlightTileAtWorldCoordinates(int tx, int ty, int tileSize) {
+		snapshot.addHighlight(tx, ty, tileSize);
+	}
+}
@@ -0,0 +1,91 @@
+package ca.vanzeben.game.gfx;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Hands RenderSnapshots from the game thread to the render thread without
+ * either one waiting for the other (triple buffering).
+ * 
+ * There are three snapshots. The game thread records into its back buffer and
+ * publishes it, swapping it with the ready snapshot. The render thread swaps
+ * its front buffer with the ready snapshot whenever a newer one has been
+ * published. Neither thread ever touches the snapshot the other one is using,
+ * and if the render thread falls behind it simply skips to the newest
+ * snapshot. The tile changes in a skipped snapshot are kept and sent on again
+ * in a later one.
+ * 
+ * Use one game thread and one render thread.
+ */
+public class RenderExchange {
+	private final AtomicReference<RenderSnapshot> ready = new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+	private RenderSnapshot back = new RenderSnapshot(); // game thread only
+	private RenderSnapshot front = new RenderSnapshot(); // render thread only
+	private long published = 0; // game thread only
+	private boolean backWasSkipped = false; // game thread only
+	private volatile Thread renderThread;
+
+	/***
+	 * Game thread: the cleared snapshot to record the next frame into.
+	 */
+	public RenderSnapshot getBackBuffer() {
+		if (backWasSkipped) {
+			back.clearDraws();
+		} else {
+			back.clear();
+		}
+		return back;
+	}
+
+	/***
+	 * Game thread: make the back buffer available to the render thread.
+	 */
+	public void publish() {
+		back.setSequence(++published);
+		back = ready.getAndSet(back);
+
+		// The render thread hands back the snapshot it was drawing when it takes a
+		// new one, so getting the previous one back means it was never drawn
+		backWasSkipped = back.getSequence() == published - 1;
+
+		Thread waiting = renderThread;
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	/***
+	 * Render thread: the newest published snapshot, or null if nothing has been
+	 * published since the last call. The snapshot stays valid until the next
+	 * call.
+	 */
+	public RenderSnapshot acquire() {
+		if (ready.get().getSequence() <= front.getSequence()) {
+			return null;
+		}
+		front = ready.getAndSet(front);
+		return front;
+	}
+
+	/***
+	 * Render thread: like acquire(), but waits up to timeoutNanos for a snapshot
+	 * to be published.
+	 */
+	public RenderSnapshot awaitNext(long timeoutNanos) {
+		renderThread = Thread.currentThread();
+
+		RenderSnapshot snapshot = acquire();
+		if (snapshot == null) {
+			LockSupport.parkNanos(this, timeoutNanos);
+			snapshot = acquire();
+		}
+		return snapshot;
+	}
+
+	/***
+	 * Game thread: number of snapshots published so far.
+	 */
+	public long getNumPublished() {
+		return published;
+	}
+}
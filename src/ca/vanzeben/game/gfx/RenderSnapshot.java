@@ -0,0 +1,207 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.Image;
+import java.util.Arrays;
+
+import ca.vanzeben.game.gfx.Screen.MirrorDirection;
+
+/***
+ * Everything the entities drew in one tick, recorded by a RecordingScreen so
+ * it can be drawn again later on another thread. Also remembers where the
+ * camera was, and carries the ids of tiles changed since the last snapshot so
+ * the render thread never reads the level's tiles while the game thread
+ * changes them.
+ * 
+ * Snapshots are reused from frame to frame (see RenderExchange), so recording
+ * into one only allocates when it has to grow.
+ */
+public class RenderSnapshot {
+	private static final int SPRITE = 0;
+	private static final int HIGHLIGHT = 1;
+	private static final int IMAGE = 2;
+
+	private long sequence = 0;
+	private int cameraX, cameraY;
+
+	private int size = 0;
+	private int[] kinds = new int[64];
+	private int[] xs = new int[64];
+	private int[] ys = new int[64];
+	private int[] rows = new int[64];
+	private int[] cols = new int[64];
+	private int[] widths = new int[64];
+	private int[] heights = new int[64];
+	private SpriteSheet[] sheets = new SpriteSheet[64];
+	private MirrorDirection[] mirrors = new MirrorDirection[64];
+	private Image[] images = new Image[64];
+
+	// Changed tiles, as blocks of firstTileX, firstTileY, tilesWide, tilesHigh
+	// and where the block's ids start in tileIds
+	private int numTileBlocks = 0;
+	private int[] tileBlocks = new int[5 * 8];
+	private int[] tileIds = new int[64];
+	private int numTileIds = 0;
+
+	public void clear() {
+		clearDraws();
+		numTileBlocks = 0;
+		numTileIds = 0;
+	}
+
+	/***
+	 * Forget what was drawn but keep the tile changes, for a snapshot the render
+	 * thread never saw.
+	 */
+	void clearDraws() {
+		Arrays.fill(sheets, 0, size, null);
+		Arrays.fill(images, 0, size, null);
+		size = 0;
+	}
+
+	/***
+	 * Add a block of changed tiles. Fill in its tilesWide * tilesHigh ids, row
+	 * by row, in getTileIds() starting at the returned offset.
+	 */
+	public int addTileBlock(int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+		if ((numTileBlocks + 1) * 5 > tileBlocks.length) {
+			tileBlocks = Arrays.copyOf(tileBlocks, tileBlocks.length * 2);
+		}
+		int count = tilesWide * tilesHigh;
+		if (numTileIds + count > tileIds.length) {
+			tileIds = Arrays.copyOf(tileIds, Math.max(tileIds.length * 2, numTileIds + count));
+		}
+
+		int offset = numTileIds;
+		int i = numTileBlocks * 5;
+		tileBlocks[i] = firstTileX;
+		tileBlocks[i + 1] = firstTileY;
+		tileBlocks[i + 2] = tilesWide;
+		tileBlocks[i + 3] = tilesHigh;
+		tileBlocks[i + 4] = offset;
+		numTileBlocks++;
+		numTileIds += count;
+		return offset;
+	}
+
+	public int getNumTileBlocks() {
+		return numTileBlocks;
+	}
+
+	public int getTileBlockX(int block) {
+		return tileBlocks[block * 5];
+	}
+
+	public int getTileBlockY(int block) {
+		return tileBlocks[block * 5 + 1];
+	}
+
+	public int getTileBlockWidth(int block) {
+		return tileBlocks[block * 5 + 2];
+	}
+
+	public int getTileBlockHeight(int block) {
+		return tileBlocks[block * 5 + 3];
+	}
+
+	/***
+	 * Where a block's ids start in getTileIds().
+	 */
+	public int getTileBlockOffset(int block) {
+		return tileBlocks[block * 5 + 4];
+	}
+
+	public int[] getTileIds() {
+		return tileIds;
+	}
+
+	public void addSprite(int x, int y, SpriteSheet sheet, int tileRow, int tileCol, MirrorDirection mirrorDir,
+			int displayWidth, int displayHeight) {
+		int i = next(SPRITE, x, y);
+		sheets[i] = sheet;
+		rows[i] = tileRow;
+		cols[i] = tileCol;
+		mirrors[i] = mirrorDir;
+		widths[i] = displayWidth;
+		heights[i] = displayHeight;
+	}
+
+	/***
+	 * Part of an image, drawn unscaled. rows and cols hold the source corner.
+	 */
+	public void addImage(int x, int y, Image image, int sourceX, int sourceY, int width, int height) {
+		int i = next(IMAGE, x, y);
+		images[i] = image;
+		cols[i] = sourceX;
+		rows[i] = sourceY;
+		widths[i] = width;
+		heights[i] = height;
+	}
+
+	public void addHighlight(int x, int y, int tileSize) {
+		int i = next(HIGHLIGHT, x, y);
+		widths[i] = tileSize;
+	}
+
+	private int next(int kind, int x, int y) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			rows = Arrays.copyOf(rows, capacity);
+			cols = Arrays.copyOf(cols, capacity);
+			widths = Arrays.copyOf(widths, capacity);
+			heights = Arrays.copyOf(heights, capacity);
+			sheets = Arrays.copyOf(sheets, capacity);
+			mirrors = Arrays.copyOf(mirrors, capacity);
+			images = Arrays.copyOf(images, capacity);
+		}
+		kinds[size] = kind;
+		xs[size] = x;
+		ys[size] = y;
+		return size++;
+	}
+
+	/***
+	 * Draw everything recorded, in the order it was recorded.
+	 */
+	public void replay(Screen screen) {
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] == SPRITE) {
+				screen.render(xs[i], ys[i], sheets[i], rows[i], cols[i], mirrors[i], widths[i], heights[i]);
+			} else if (kinds[i] == IMAGE) {
+				screen.renderImageRegion(images[i], cols[i], rows[i], widths[i], heights[i], xs[i], ys[i]);
+			} else {
+				screen.highlightTileAtWorldCoordinates(xs[i], ys[i], widths[i]);
+			}
+		}
+	}
+
+	public void setCamera(int cameraX, int cameraY) {
+		this.cameraX = cameraX;
+		this.cameraY = cameraY;
+	}
+
+	public int getCameraX() {
+		return cameraX;
+	}
+
+	public int getCameraY() {
+		return cameraY;
+	}
+
+	/***
+	 * Number of draws recorded.
+	 */
+	public int size() {
+		return size;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+}
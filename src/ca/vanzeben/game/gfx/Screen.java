@@ -7,6 +7,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import ca.vanzeben.game.Game;
 import ca.vanzeben.game.gfx.Screen.MirrorDirection;
@@ -38,6 +39,16 @@ public class Screen {
 		Y, X, BOTH, NONE
 	}
 
+	/***
+	 * How sprites are drawn on to the screen image. GRAPHICS scales sprites with
+	 * an AffineTransformOp and draws them with Graphics.drawImage(). PIXELS
+	 * copies pixels straight from the sprite sheet's pixel array into the
+	 * screen's pixel array.
+	 */
+	public static enum RenderMode {
+		GRAPHICS, PIXELS
+	}
+
 	private int x = 0; // Number of pixels to offset screen by (within the
 											// level image)
 	private int y = 0;
@@ -48,17 +59,58 @@ public class Screen {
 	private int mouseX, mouseY;
 
 	private BufferedImage image;
+	private int[] pixels; // backing array of image, only fetched for RenderMode.PIXELS
+	private Graphics imageGraphics;
 	private Graphics graphicsContext = null;
 
+	private RenderMode renderMode = RenderMode.GRAPHICS;
+
+	// Source column for each destination column of the sprite being blitted.
+	// Kept between calls so blitting does not allocate.
+	private int[] blitSourceColumns = new int[0];
+
+	private SpriteCache spriteCache;
+	private float interpolation = 1f;
+
 	public Screen(int width, int height) {
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		graphicsContext = image.getGraphics();
-		this.width = width;
-		this.height = height;
+		this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB),
+				new SpriteCache());
+	}
+
+	/***
+	 * Create a screen that draws into an existing image, e.g. an offscreen image
+	 * that tiles are pre-rendered into. RenderMode.PIXELS needs the image to be
+	 * one of the TYPE_INT_* types. The sprite cache may be shared with another
+	 * screen.
+	 * 
+	 * @param image
+	 * @param spriteCache
+	 */
+	public Screen(BufferedImage image, SpriteCache spriteCache) {
+		this.image = image;
+		this.imageGraphics = image.getGraphics();
+		this.graphicsContext = imageGraphics;
+		this.spriteCache = spriteCache;
+		this.width = image.getWidth();
+		this.height = image.getHeight();
 	}
 
 	public void reset() {
-		graphicsContext.fillRect(0, 0, width, height);
+		if (renderMode == RenderMode.PIXELS) {
+			Arrays.fill(pixelArray(), DEFAULT_COLOR.getRGB());
+		} else {
+			graphicsContext.setColor(DEFAULT_COLOR);
+			graphicsContext.fillRect(0, 0, width, height);
+		}
+	}
+
+	// The image's pixels. Only fetched when first needed because once they have
+	// been fetched Java2D can no longer keep the image in video memory.
+	private int[] pixelArray() {
+		if (pixels == null) {
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+		return pixels;
 	}
 
 	/***
@@ -120,17 +172,28 @@ public class Screen {
 		int sourcex1 = tileCol * sheet.getSpriteWidth();
 		int sourcey1 = tileRow * sheet.getSpriteHeight();
 
+		// Packed sprites are taken from the atlas instead of the sheet
+		SpriteAtlas atlas = sheet.getAtlas();
+		if (atlas != null) {
+			int sprite = atlas.find(sheet, tileRow, tileCol);
+			if (sprite >= 0) {
+				sourcex1 = atlas.getX(sprite);
+				sourcey1 = atlas.getY(sprite);
+			} else {
+				atlas = null;
+			}
+		}
+
 		int destx1 = xPos;
 		int desty1 = yPos;
 
-		BufferedImage tile = sheet.getImage().getSubimage(sourcex1, sourcey1,
-				sheet.getSpriteWidth(), sheet.getSpriteHeight());
-
-		double horizontalScale = displayWidth / (double) sheet.getSpriteWidth();
-		double verticalScale = displayHeight / (double) sheet.getSpriteHeight();
-		tile = processTile(tile, mirrorDir, horizontalScale, verticalScale);
-
-		this.graphicsContext.drawImage(tile, destx1, desty1, null);
+		if (renderMode == RenderMode.PIXELS) {
+			blit(sheet, atlas, sourcex1, sourcey1, mirrorDir, destx1, desty1,
+					displayWidth, displayHeight);
+		} else {
+			drawSprite(sheet, atlas, tileRow, tileCol, sourcex1, sourcey1, mirrorDir,
+					destx1, desty1, displayWidth, displayHeight);
+		}
 
 		// ****** DEBUG ******
 		if (debug) {
@@ -139,6 +202,95 @@ public class Screen {
 		}
 	}
 
+	// Draw a sprite through the Graphics context, scaling it with an
+	// AffineTransformOp (cached between frames). atlas is null unless the
+	// sprite is taken from it.
+	private void drawSprite(SpriteSheet sheet, SpriteAtlas atlas, int tileRow,
+			int tileCol, int sourcex1, int sourcey1, MirrorDirection mirrorDir,
+			int destx1, int desty1, int displayWidth, int displayHeight) {
+		BufferedImage tile = spriteCache.get(sheet, tileRow, tileCol, mirrorDir,
+				displayWidth, displayHeight);
+		if (tile == null) {
+			BufferedImage source = atlas != null ? atlas.getImage()
+					: sheet.getImage();
+			tile = source.getSubimage(sourcex1, sourcey1,
+					sheet.getSpriteWidth(), sheet.getSpriteHeight());
+
+			double horizontalScale = displayWidth / (double) sheet.getSpriteWidth();
+			double verticalScale = displayHeight / (double) sheet.getSpriteHeight();
+			tile = AcceleratedImages.toCompatible(
+					processTile(tile, mirrorDir, horizontalScale, verticalScale));
+			spriteCache.put(sheet, tileRow, tileCol, mirrorDir, displayWidth,
+					displayHeight, tile);
+		}
+
+		this.graphicsContext.drawImage(tile, destx1, desty1, null);
+	}
+
+	/***
+	 * Copy a sprite directly from the sheet's pixel array into the screen's pixel
+	 * array. Scaling is nearest-neighbour, fully transparent source pixels are
+	 * skipped and partially transparent ones are blended. Allocates nothing
+	 * unless a sprite is wider than any drawn before. The pixels come from atlas
+	 * instead if it isn't null.
+	 */
+	private void blit(SpriteSheet sheet, SpriteAtlas atlas, int sourcex1, int sourcey1,
+			MirrorDirection mirrorDir, int destx1, int desty1, int displayWidth,
+			int displayHeight) {
+		if (displayWidth <= 0 || displayHeight <= 0) {
+			return;
+		}
+
+		// Clip the destination rectangle to the screen
+		int startX = Math.max(0, destx1);
+		int startY = Math.max(0, desty1);
+		int endX = Math.min(width, destx1 + displayWidth);
+		int endY = Math.min(height, desty1 + displayHeight);
+		if (startX >= endX || startY >= endY) {
+			return;
+		}
+
+		int[] pixels = pixelArray();
+		int[] sheetPixels = atlas != null ? atlas.getPixels() : sheet.getPixels();
+		int sheetWidth = atlas != null ? atlas.getWidth() : sheet.getPixelWidth();
+		int spriteWidth = sheet.getSpriteWidth();
+		int spriteHeight = sheet.getSpriteHeight();
+		boolean mirrorX = mirrorDir == MirrorDirection.X
+				|| mirrorDir == MirrorDirection.BOTH;
+		boolean mirrorY = mirrorDir == MirrorDirection.Y
+				|| mirrorDir == MirrorDirection.BOTH;
+
+		if (blitSourceColumns.length < displayWidth) {
+			blitSourceColumns = new int[displayWidth];
+		}
+		for (int dx = startX - destx1; dx < endX - destx1; dx++) {
+			int sx = dx * spriteWidth / displayWidth;
+			if (mirrorX) {
+				sx = spriteWidth - 1 - sx;
+			}
+			blitSourceColumns[dx] = sourcex1 + sx;
+		}
+
+		for (int y = startY; y < endY; y++) {
+			int sy = (y - desty1) * spriteHeight / displayHeight;
+			if (mirrorY) {
+				sy = spriteHeight - 1 - sy;
+			}
+			int sourceRow = (sourcey1 + sy) * sheetWidth;
+			int destRow = y * width;
+
+			for (int x = startX; x < endX; x++) {
+				int colour = sheetPixels[sourceRow + blitSourceColumns[x - destx1]];
+				int alpha = colour >>> 24;
+				if (alpha == 0xFF) {
+					pixels[destRow + x] = colour;
+				} else if (alpha != 0) {
+					pixels[destRow + x] = blend(colour, pixels[destRow + x], alpha);
+				}
+			}
+		}
+	}
+
 	// Scale and mirror the tile before display
 	private BufferedImage processTile(BufferedImage tile, MirrorDirection mirrorDir,
 			double horizontalScale, double verticalScale) {
@@ -205,6 +357,40 @@ public class Screen {
 				displayHeight);
 	}
 
+	/***
+	 * Draw an already prepared image (e.g. a pre-rendered block of tiles) with
+	 * its upper left corner at world coordinates xPos, yPos. The image is not
+	 * scaled.
+	 * 
+	 * @param image
+	 * @param xPos
+	 * @param yPos
+	 */
+	public void renderImage(Image image, int xPos, int yPos) {
+		this.graphicsContext.drawImage(image, xPos - x, yPos - y, null);
+	}
+
+	/***
+	 * Draw part of an image, unscaled, with its upper left corner at world
+	 * coordinates xPos, yPos.
+	 * 
+	 * @param image
+	 * @param sourceX
+	 * @param sourceY
+	 *          upper left corner of the part of image to draw
+	 * @param width
+	 * @param height
+	 * @param xPos
+	 * @param yPos
+	 */
+	public void renderImageRegion(Image image, int sourceX, int sourceY, int width, int height, int xPos,
+			int yPos) {
+		int destx1 = xPos - x;
+		int desty1 = yPos - y;
+		this.graphicsContext.drawImage(image, destx1, desty1, destx1 + width, desty1 + height, sourceX, sourceY,
+				sourceX + width, sourceY + height, null);
+	}
+
 	public void renderTextAtWorldCoordinates(String msg, Font font, int x, int y,
 			int scale) {
 		font.render(msg, this, x, y, scale);
@@ -216,6 +402,25 @@ public class Screen {
 				screenYCoordToWorldCoord(y), scale);
 	}
 
+	/***
+	 * Like renderTextAtWorldCoordinates(), for text that doesn't change from
+	 * frame to frame. See Font.renderCached().
+	 */
+	public void renderCachedTextAtWorldCoordinates(String msg, Font font, int x,
+			int y, int scale) {
+		font.renderCached(msg, this, x, y, scale);
+	}
+
+	/***
+	 * Like renderTextAtScreenCoordinates(), for text that doesn't change from
+	 * frame to frame. See Font.renderCached().
+	 */
+	public void renderCachedTextAtScreenCoordinates(String msg, Font font, int x,
+			int y, int scale) {
+		font.renderCached(msg, this, screenXCoordToWorldCoord(x),
+				screenYCoordToWorldCoord(y), scale);
+	}
+
 	/**
 	 * Sets the screen position in the global (x, y) coordinate system.
 	 * 
@@ -227,10 +432,47 @@ public class Screen {
 		this.y = yOffset;
 	}
 
+	// Blend a partially transparent source pixel over an opaque destination pixel
+	private static int blend(int src, int dst, int alpha) {
+		int inverse = 0xFF - alpha;
+		int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inverse) / 0xFF;
+		int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inverse) / 0xFF;
+		int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inverse) / 0xFF;
+		return 0xFF000000 | (r << 16) | (g << 8) | b;
+	}
+
+	public RenderMode getRenderMode() {
+		return renderMode;
+	}
+
+	/***
+	 * Choose how sprites are drawn. Both modes draw into the same screen image so
+	 * they can be switched between frames to compare them.
+	 * 
+	 * @param renderMode
+	 */
+	public void setRenderMode(RenderMode renderMode) {
+		this.renderMode = renderMode;
+	}
+
+	/***
+	 * Draw into g instead of the screen image, e.g. straight into a window's back
+	 * buffer so the finished frame doesn't have to be copied there. Only works in
+	 * RenderMode.GRAPHICS: PIXELS mode always draws into the screen image.
+	 * 
+	 * @param g
+	 */
 	public void setGraphicsContext(Graphics g) {
 		this.graphicsContext = g;
 	}
 
+	/***
+	 * Go back to drawing into the screen image after setGraphicsContext().
+	 */
+	public void drawToImage() {
+		this.graphicsContext = imageGraphics;
+	}
+
 	/**
 	 * Return world y-coordinate of upper left of screen.
 	 * 
@@ -270,21 +512,24 @@ public class Screen {
 		for (int dx = 0; dx < this.width; dx += increment) {
 			int worldX = (x + dx);
 
-			Font.DEFAULT.render("" + worldX, this, worldX, y + 10, 1);
+			Font.DEFAULT.renderNumber(worldX, this, worldX, y + 10, 1);
 		}
 
 		for (int dy = 0; dy < this.height; dy += increment) {
 			int worldY = (y + dy);
 
-			Font.DEFAULT.render("" + worldY, this, x + 10, worldY, 1);
+			Font.DEFAULT.renderNumber(worldY, this, x + 10, worldY, 1);
 		}
 	}
 
 	public void displayMouseCoordinatesAtMouse() {
 		this.graphicsContext.drawRect(mouseX, mouseY, 3, 3);
-		Font.DEFAULT.render("" + mouseX + ", " + mouseY, this,
+		int textX = Font.DEFAULT.renderNumber(mouseX, this,
 				screenXCoordToWorldCoord(mouseX), screenYCoordToWorldCoord(mouseY - 10),
 				1);
+		Font.DEFAULT.render(", ", this, textX, screenYCoordToWorldCoord(mouseY - 10), 1);
+		Font.DEFAULT.renderNumber(mouseY, this, textX + Font.DEFAULT.getWidthOf(", "),
+				screenYCoordToWorldCoord(mouseY - 10), 1);
 	}
 
 	public int worldXCoordToScreenCoord(int wx) {
@@ -334,6 +579,30 @@ public class Screen {
 	public Image getImage() {
 		return this.image;
 	}
+
+	/***
+	 * Cache of scaled/mirrored sprites used by render(). Exposed so hit, miss and
+	 * eviction counts can be inspected.
+	 * 
+	 * @return
+	 */
+	public SpriteCache getSpriteCache() {
+		return spriteCache;
+	}
+
+	/***
+	 * Set how far between the previous tick and the last one entities are drawn,
+	 * 0 to 1. 1 (the default) draws them where they are now.
+	 * 
+	 * @param interpolation
+	 */
+	public void setInterpolation(float interpolation) {
+		this.interpolation = interpolation;
+	}
+
+	public float getInterpolation() {
+		return interpolation;
+	}
 	
 	public void drawLine(int x1, int y1, int x2, int y2, Color c) {
 		this.graphicsContext.setColor(c);
@@ -0,0 +1,259 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/***
+ * A single small image holding just the sprites the game uses, copied out of
+ * their sprite sheets. Once installed, Screen.render() draws those sprites
+ * from the atlas instead of the sheet, so the sheets' images don't have to be
+ * kept in memory.
+ *
+ * add() every sprite, then pack() and install(). Sprites are packed in rows
+ * ("shelves"), tallest first.
+ */
+public class SpriteAtlas {
+	private final List<SpriteSheet> sheets = new ArrayList<SpriteSheet>();
+
+	// Sprites added, as sheet index, row, col triples
+	private int[] added = new int[64];
+	private int numSprites = 0;
+
+	// Index of each sprite in spriteX/spriteY by sheet id, then sprite id within
+	// the sheet (see SpriteSheet.idFor()). -1 for sprites that aren't in the
+	// atlas.
+	private int[][] lookup = new int[0][];
+	private int[] spriteX = new int[0];
+	private int[] spriteY = new int[0];
+
+	private BufferedImage image;
+	private int[] pixels;
+	private int width, height;
+	private long usedPixels = 0;
+
+	/***
+	 * Include a sprite in the atlas. Adding the same one twice does nothing.
+	 */
+	public void add(SpriteSheet sheet, int row, int col) {
+		if (image != null) {
+			throw new IllegalStateException("Atlas has already been packed");
+		}
+		if (row < 0 || col < 0 || row >= sheet.getNumSpritesHeight()
+				|| col >= sheet.getNumSpritesWidth()) {
+			throw new IllegalArgumentException("No sprite " + row + ", " + col
+					+ " in sprite sheet " + sheet.getName());
+		}
+
+		int sheetIndex = sheets.indexOf(sheet);
+		if (sheetIndex < 0) {
+			sheetIndex = sheets.size();
+			sheets.add(sheet);
+		}
+		for (int i = 0; i < numSprites; i++) {
+			if (added[i * 3] == sheetIndex && added[i * 3 + 1] == row
+					&& added[i * 3 + 2] == col) {
+				return;
+			}
+		}
+
+		if ((numSprites + 1) * 3 > added.length) {
+			added = Arrays.copyOf(added, added.length * 2);
+		}
+		added[numSprites * 3] = sheetIndex;
+		added[numSprites * 3 + 1] = row;
+		added[numSprites * 3 + 2] = col;
+		numSprites++;
+	}
+
+	/***
+	 * Lay out the sprites added so far and copy them into the atlas image. Loads
+	 * the sheets they come from if they aren't already.
+	 */
+	public void pack() {
+		Integer[] order = new Integer[numSprites];
+		long totalArea = 0;
+		int widest = 1;
+		for (int i = 0; i < numSprites; i++) {
+			order[i] = i;
+			SpriteSheet sheet = sheets.get(added[i * 3]);
+			totalArea += sheet.getSpriteWidth() * sheet.getSpriteHeight();
+			widest = Math.max(widest, sheet.getSpriteWidth());
+		}
+
+		// Tallest first so each shelf wastes as little height as possible
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				SpriteSheet sheetA = sheets.get(added[a * 3]);
+				SpriteSheet sheetB = sheets.get(added[b * 3]);
+				if (sheetA.getSpriteHeight() != sheetB.getSpriteHeight()) {
+					return sheetB.getSpriteHeight() - sheetA.getSpriteHeight();
+				}
+				return sheetB.getSpriteWidth() - sheetA.getSpriteWidth();
+			}
+		});
+
+		// Roughly square: the smallest power of two at least as wide as the
+		// square root of the sprites' total area
+		width = Integer.highestOneBit(Math.max(widest,
+				(int) Math.ceil(Math.sqrt(totalArea))) - 1) << 1;
+		width = Math.max(width, widest);
+
+		spriteX = new int[numSprites];
+		spriteY = new int[numSprites];
+		int shelfX = 0, shelfY = 0, shelfHeight = 0;
+		for (int i : order) {
+			SpriteSheet sheet = sheets.get(added[i * 3]);
+			int w = sheet.getSpriteWidth();
+			int h = sheet.getSpriteHeight();
+			if (shelfX + w > width) {
+				shelfY += shelfHeight;
+				shelfX = 0;
+				shelfHeight = 0;
+			}
+			spriteX[i] = shelfX;
+			spriteY[i] = shelfY;
+			shelfX += w;
+			shelfHeight = Math.max(shelfHeight, h);
+		}
+		height = Math.max(1, shelfY + shelfHeight);
+
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		usedPixels = totalArea;
+
+		int maxSheetId = -1;
+		for (SpriteSheet sheet : sheets) {
+			maxSheetId = Math.max(maxSheetId, sheet.getId());
+		}
+		lookup = new int[maxSheetId + 1][];
+		for (SpriteSheet sheet : sheets) {
+			int[] table = new int[sheet.getNumSpritesWidth()
+					* sheet.getNumSpritesHeight()];
+			Arrays.fill(table, -1);
+			lookup[sheet.getId()] = table;
+		}
+
+		for (int i = 0; i < numSprites; i++) {
+			SpriteSheet sheet = sheets.get(added[i * 3]);
+			int row = added[i * 3 + 1];
+			int col = added[i * 3 + 2];
+			int w = sheet.getSpriteWidth();
+			int h = sheet.getSpriteHeight();
+			BufferedImage source = sheet.getImage();
+			if (source != null) {
+				source.getRGB(col * w, row * h, w, h, pixels,
+						spriteY[i] * width + spriteX[i], width);
+			}
+			lookup[sheet.getId()][sheet.idFor(row, col)] = i;
+		}
+	}
+
+	/***
+	 * Make Screen draw the packed sprites from the atlas, and let go of the
+	 * sheets' own images. Drawing a sprite that isn't in the atlas loads its
+	 * sheet again.
+	 */
+	public void install() {
+		if (image == null) {
+			throw new IllegalStateException("Atlas must be packed before it is installed");
+		}
+		for (SpriteSheet sheet : sheets) {
+			sheet.setAtlas(this);
+			sheet.releaseImage();
+		}
+	}
+
+	/***
+	 * Index of a sprite in the atlas, for getX() and getY(), or -1 if it isn't
+	 * in the atlas.
+	 */
+	public int find(SpriteSheet sheet, int row, int col) {
+		int sheetId = sheet.getId();
+		if (sheetId >= lookup.length || lookup[sheetId] == null) {
+			return -1;
+		}
+		int[] table = lookup[sheetId];
+		int sprite = sheet.idFor(row, col);
+		if (col < 0 || col >= sheet.getNumSpritesWidth() || sprite < 0
+				|| sprite >= table.length) {
+			return -1;
+		}
+		return table[sprite];
+	}
+
+	public int getX(int sprite) {
+		return spriteX[sprite];
+	}
+
+	public int getY(int sprite) {
+		return spriteY[sprite];
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/***
+	 * The atlas image's pixels as 0xAARRGGBB, row by row (getWidth() per row).
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumSprites() {
+		return numSprites;
+	}
+
+	public List<SpriteSheet> getSheets() {
+		return Collections.unmodifiableList(sheets);
+	}
+
+	/***
+	 * Fraction of the atlas image covered by sprites, 0 to 1.
+	 */
+	public double getOccupancy() {
+		return image == null ? 0 : usedPixels / (double) ((long) width * height);
+	}
+
+	/***
+	 * Bytes of pixels in the atlas image.
+	 */
+	public long getBytes() {
+		return (long) width * height * 4;
+	}
+
+	/***
+	 * Bytes of pixels in the images of the sheets the sprites came from.
+	 */
+	public long getSourceBytes() {
+		long bytes = 0;
+		for (SpriteSheet sheet : sheets) {
+			bytes += (long) sheet.getPixelWidth() * sheet.getPixelHeight() * 4;
+		}
+		return bytes;
+	}
+
+	/***
+	 * One line summary of the atlas's size, occupancy and the memory saved.
+	 */
+	public String report() {
+		return String.format(
+				"Sprite atlas: %d sprites from %d sheets in %dx%d, %.1f%% occupied, %d KB instead of %d KB (%d KB saved)",
+				numSprites, sheets.size(), width, height, getOccupancy() * 100,
+				getBytes() / 1024, getSourceBytes() / 1024,
+				(getSourceBytes() - getBytes()) / 1024);
+	}
+}
@@ -0,0 +1,158 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ca.vanzeben.game.gfx.Screen.MirrorDirection;
+
+/***
+ * Least-recently-used cache of sprites that have already been cut out of their
+ * sprite sheet, scaled and mirrored. Screen uses this so each distinct sprite
+ * is only run through an AffineTransformOp once instead of on every frame.
+ *
+ * NOTE: not thread safe. All lookups are expected to come from the thread
+ * doing the rendering.
+ */
+public class SpriteCache {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private final LinkedHashMap<Key, BufferedImage> images;
+
+	// Reused for lookups so a cache hit does not allocate a new key
+	private final Key probe = new Key();
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public SpriteCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SpriteCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+
+		// access-ordered so the eldest entry is always the least recently used
+		this.images = new LinkedHashMap<Key, BufferedImage>(capacity * 4 / 3 + 1,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+				if (size() > SpriteCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/***
+	 * Returns the cached image for this sprite, or null if it has not been built
+	 * yet (or has been evicted).
+	 */
+	public BufferedImage get(SpriteSheet sheet, int tileRow, int tileCol,
+			MirrorDirection mirrorDir, int displayWidth, int displayHeight) {
+		probe.set(sheet, tileRow, tileCol, mirrorDir, displayWidth, displayHeight);
+
+		BufferedImage image = images.get(probe);
+		if (image == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return image;
+	}
+
+	/***
+	 * Store a processed sprite image. May evict the least recently used sprite.
+	 */
+	public void put(SpriteSheet sheet, int tileRow, int tileCol,
+			MirrorDirection mirrorDir, int displayWidth, int displayHeight,
+			BufferedImage image) {
+		Key key = new Key();
+		key.set(sheet, tileRow, tileCol, mirrorDir, displayWidth, displayHeight);
+		images.put(key, image);
+	}
+
+	public void clear() {
+		images.clear();
+	}
+
+	public int size() {
+		return images.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public void resetCounters() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	public String toString() {
+		return "SpriteCache[size=" + size() + "/" + capacity + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	private static class Key {
+		private SpriteSheet sheet;
+		private int tileRow, tileCol;
+		private MirrorDirection mirrorDir;
+		private int displayWidth, displayHeight;
+
+		void set(SpriteSheet sheet, int tileRow, int tileCol,
+				MirrorDirection mirrorDir, int displayWidth, int displayHeight) {
+			this.sheet = sheet;
+			this.tileRow = tileRow;
+			this.tileCol = tileCol;
+			this.mirrorDir = mirrorDir;
+			this.displayWidth = displayWidth;
+			this.displayHeight = displayHeight;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = System.identityHashCode(sheet);
+			h = 31 * h + tileRow;
+			h = 31 * h + tileCol;
+			h = 31 * h + mirrorDir.ordinal();
+			h = 31 * h + displayWidth;
+			h = 31 * h + displayHeight;
+			return h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return sheet == other.sheet && tileRow == other.tileRow
+					&& tileCol == other.tileCol && mirrorDir == other.mirrorDir
+					&& displayWidth == other.displayWidth
+					&& displayHeight == other.displayHeight;
+		}
+	}
+}
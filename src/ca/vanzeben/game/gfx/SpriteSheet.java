@@ -1,11 +1,24 @@
 package ca.vanzeben.game.gfx;
 
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * A grid of equally sized sprites in one image.
+ * 
+ * The image isn't decoded until the sheet is first drawn or measured (or
+ * preload() is called), and sheets with the same path share one decoded image,
+ * see SpriteSheetImages.
+ * 
+ * @author David
+ *
+ */
 public class SpriteSheet {
+	// Declared before the sheets below so it exists when they are created
+	private static final AtomicInteger numSheets = new AtomicInteger();
+
 	public static final SpriteSheet DungeonCrawl = new SpriteSheet("dungeon",
 			"/DungeonCrawl_ProjectUtumnoTileset.png", 48, 64);
 
@@ -24,34 +37,112 @@ public class SpriteSheet {
 
 	private int spriteWidth, spriteHeight;
 
-	private int[] pixels;
-	private BufferedImage sheetImage;
+	private volatile SpriteSheetImages.Entry images;
+	private volatile boolean loaded = false;
+	private volatile SpriteAtlas atlas;
+
+	private final int id = numSheets.getAndIncrement();
 
 	public SpriteSheet(String name, String path, int numSpritesHeight,
 			int numSpritesWidth) {
-		sheetImage = null;
-		try {
-			sheetImage = ImageIO.read(SpriteSheet.class.getResourceAsStream(path));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		if (sheetImage == null) {
-			return;
-		}
-
 		this.name = name;
 		this.path = path;
-		this.pixelWidth = sheetImage.getWidth();
-		this.pixelHeight = sheetImage.getHeight();
 		this.numSpritesHeight = numSpritesHeight;
 		this.numSpritesWidth = numSpritesWidth;
+	}
+
+	/***
+	 * Decode the image now if it hasn't been already. Every getter that needs the
+	 * image calls this.
+	 */
+	public void load() {
+		if (loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			images = SpriteSheetImages.get(path);
+			BufferedImage sheetImage = images.image;
+			if (sheetImage != null) {
+				this.pixelWidth = sheetImage.getWidth();
+				this.pixelHeight = sheetImage.getHeight();
+				this.spriteWidth = this.pixelWidth / this.numSpritesWidth;
+				this.spriteHeight = this.pixelHeight / this.numSpritesHeight;
+			}
+			loaded = true;
+		}
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	// The decoded image, loading it again if it has been released
+	private SpriteSheetImages.Entry images() {
+		load();
+		SpriteSheetImages.Entry entry = images;
+		if (entry == null) {
+			synchronized (this) {
+				if (images == null) {
+					images = SpriteSheetImages.get(path);
+				}
+				entry = images;
+			}
+		}
+		return entry;
+	}
 
-		this.spriteWidth = this.pixelWidth / this.numSpritesWidth;
-		this.spriteHeight = this.pixelHeight / this.numSpritesHeight;
+	/***
+	 * Let go of this sheet's image, e.g. once the sprites used from it are in a
+	 * SpriteAtlas. The sheet's sizes are kept. The image is loaded again if it is
+	 * needed after all.
+	 */
+	public synchronized void releaseImage() {
+		if (images != null) {
+			images = null;
+			SpriteSheetImages.release(path);
+		}
+	}
+
+	/***
+	 * Atlas holding some of this sheet's sprites, or null. Screen draws those
+	 * sprites from the atlas instead of this sheet.
+	 */
+	public SpriteAtlas getAtlas() {
+		return atlas;
+	}
+
+	public void setAtlas(SpriteAtlas atlas) {
+		this.atlas = atlas;
+	}
+
+	/***
+	 * Decode the images of all the given sheets at once, on up to one thread per
+	 * processor, and return when they are done.
+	 * 
+	 * @param sheets
+	 */
+	public static void preload(SpriteSheet... sheets) {
+		List<String> paths = new ArrayList<String>();
+		for (SpriteSheet sheet : sheets) {
+			paths.add(sheet.getPath());
+		}
+		SpriteSheetImages.preload(paths,
+				Runtime.getRuntime().availableProcessors());
 
-		pixels = sheetImage.getRGB(0, 0, pixelWidth, pixelHeight, null, 0,
-				pixelWidth);
+		for (SpriteSheet sheet : sheets) {
+			sheet.load();
+		}
+	}
+
+	/***
+	 * Number that is different for every sprite sheet, e.g. to group draws by
+	 * sheet.
+	 */
+	public int getId() {
+		return id;
 	}
 
 	/***
@@ -85,18 +176,22 @@ public class SpriteSheet {
 	}
 
 	public int getPixelWidth() {
+		load();
 		return pixelWidth;
 	}
 
 	public void setPixelWidth(int pixelWidth) {
+		load();
 		this.pixelWidth = pixelWidth;
 	}
 
 	public int getPixelHeight() {
+		load();
 		return pixelHeight;
 	}
 
 	public void setPixelHeight(int pixelHeight) {
+		load();
 		this.pixelHeight = pixelHeight;
 	}
 
@@ -105,6 +200,7 @@ public class SpriteSheet {
 	}
 
 	public void setNumSpritesWidth(int numSpritesWidth) {
+		load();
 		this.numSpritesWidth = numSpritesWidth;
 	}
 
@@ -113,22 +209,30 @@ public class SpriteSheet {
 	}
 
 	public void setNumSpritesHeight(int numSpritesHeight) {
+		load();
 		this.numSpritesHeight = numSpritesHeight;
 	}
 
+	/***
+	 * The image's pixels as 0xAARRGGBB, row by row. Copied out of the image the
+	 * first time any sheet with this path asks for them.
+	 */
 	public int[] getPixels() {
-		return pixels;
+		return images().getPixels();
 	}
 
 	public int getSpriteHeight() {
+		load();
 		return this.spriteHeight;
 	}
 
 	public int getSpriteWidth() {
+		load();
 		return this.spriteWidth;
 	}
 
 	public void displayInfo() {
+		load();
 		System.out.println("Spritesheet: " + name);
 		System.out.println("Full spritesheet pixel size: " + this.pixelWidth + ", "
 				+ this.pixelHeight);
@@ -139,6 +243,6 @@ public class SpriteSheet {
 	}
 
 	public BufferedImage getImage() {
-		return this.sheetImage;
+		return images().image;
 	}
 }
@@ -0,0 +1,193 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+/***
+ * Decoded sprite sheet images by resource path. Each path is decoded once, the
+ * first time a sprite sheet using it is drawn or measured, and every
+ * SpriteSheet with that path shares the result. preload() decodes a set of
+ * paths on several threads at once, e.g. at startup.
+ *
+ * A sheet's int[] pixels (only used by RenderMode.PIXELS) are also shared and
+ * only copied out of the image the first time they are asked for.
+ */
+public class SpriteSheetImages {
+
+	/***
+	 * A decoded image. image is null if the path could not be read.
+	 */
+	static class Entry {
+		final BufferedImage image;
+		private int[] pixels;
+
+		Entry(BufferedImage image) {
+			this.image = image;
+		}
+
+		synchronized int[] getPixels() {
+			if (pixels == null && image != null) {
+				pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null,
+						0, image.getWidth());
+			}
+			return pixels;
+		}
+	}
+
+	private static final ConcurrentHashMap<String, Future<Entry>> entries = new ConcurrentHashMap<String, Future<Entry>>();
+
+	private SpriteSheetImages() {
+	}
+
+	/***
+	 * The image at path, decoding it if no one has yet. If another thread is
+	 * already decoding it this waits for that thread instead of decoding it
+	 * again.
+	 */
+	static Entry get(final String path) {
+		Future<Entry> future = entries.get(path);
+		if (future == null) {
+			FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+				public Entry call() {
+					return new Entry(decode(path));
+				}
+			});
+			future = entries.putIfAbsent(path, task);
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Could not load sprite sheet " + path,
+							e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static BufferedImage decode(String path) {
+		InputStream in = SpriteSheetImages.class.getResourceAsStream(path);
+		if (in == null) {
+			System.err.println("Sprite sheet not found: " + path);
+			return null;
+		}
+		try {
+			return ImageIO.read(in);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing more to do
+			}
+		}
+	}
+
+	/***
+	 * Decode every path not already decoded, several at a time, and return once
+	 * they are all done.
+	 *
+	 * @param paths
+	 * @param threads
+	 *          most paths to decode at once
+	 */
+	public static void preload(Collection<String> paths, int threads) {
+		List<String> toLoad = new ArrayList<String>();
+		for (String path : paths) {
+			if (!isLoaded(path) && !toLoad.contains(path)) {
+				toLoad.add(path);
+			}
+		}
+		if (toLoad.isEmpty()) {
+			return;
+		}
+		if (threads <= 1 || toLoad.size() == 1) {
+			for (String path : toLoad) {
+				get(path);
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.min(threads, toLoad.size()), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SpriteSheet_load");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		try {
+			List<Future<?>> loads = new ArrayList<Future<?>>();
+			for (final String path : toLoad) {
+				loads.add(pool.submit(new Runnable() {
+					public void run() {
+						get(path);
+					}
+				}));
+			}
+			for (Future<?> load : loads) {
+				try {
+					load.get();
+				} catch (ExecutionException e) {
+					// Left for whoever uses the sheet to report
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/***
+	 * Forget the image at path so it can be garbage collected once no sprite
+	 * sheet holds on to it. It is decoded again next time it is needed.
+	 */
+	static void release(String path) {
+		entries.remove(path);
+	}
+
+	/***
+	 * True if the image at path has finished decoding.
+	 */
+	public static boolean isLoaded(String path) {
+		Future<Entry> future = entries.get(path);
+		return future != null && future.isDone();
+	}
+
+	/***
+	 * Number of distinct images decoded or being decoded.
+	 */
+	public static int size() {
+		return entries.size();
+	}
+}
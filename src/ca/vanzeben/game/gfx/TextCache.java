@@ -0,0 +1,90 @@
+package ca.vanzeben.game.gfx;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * Least-recently-used cache of strings that have already been drawn into an
+ * image, for text that is the same every frame (a title, a player's name).
+ * Drawing cached text is then a single image copy.
+ * 
+ * Thread safe, since text can be drawn from the game thread and the render
+ * thread.
+ */
+public class TextCache {
+	public static final int DEFAULT_CAPACITY = 128;
+
+	private final int capacity;
+	private final LinkedHashMap<Key, BufferedImage> images;
+
+	// Reused for lookups so a cache hit does not allocate a new key
+	private final Key probe = new Key();
+
+	public TextCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TextCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+
+		// access-ordered so the eldest entry is always the least recently used
+		this.images = new LinkedHashMap<Key, BufferedImage>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+				return size() > TextCache.this.capacity;
+			}
+		};
+	}
+
+	/***
+	 * Image of text drawn at scale, or null if it isn't cached.
+	 */
+	public synchronized BufferedImage get(String text, int scale) {
+		probe.set(text, scale);
+		return images.get(probe);
+	}
+
+	public synchronized void put(String text, int scale, BufferedImage image) {
+		Key key = new Key();
+		key.set(text, scale);
+		images.put(key, image);
+	}
+
+	public synchronized int size() {
+		return images.size();
+	}
+
+	public synchronized void clear() {
+		images.clear();
+	}
+
+	private static class Key {
+		private String text;
+		private int scale;
+
+		void set(String text, int scale) {
+			this.text = text;
+			this.scale = scale;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * text.hashCode() + scale;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return scale == other.scale && text.equals(other.text);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package ca.vanzeben.game.level;
+
+/***
+ * TileMap held entirely in memory as one array, row by row.
+ */
+public class ArrayTileMap implements TileMap {
+	private final int width, height;
+	private final short[] tileIds;
+
+	public ArrayTileMap(int width, int height) {
+		this(width, height, new short[width * height]);
+	}
+
+	/***
+	 * Wrap an existing array of tile ids (row by row). The array is not copied.
+	 */
+	public ArrayTileMap(int width, int height, short[] tileIds) {
+		if (tileIds.length != width * height) {
+			throw new IllegalArgumentException("Expected " + (width * height)
+					+ " tile ids, got " + tileIds.length);
+		}
+		this.width = width;
+		this.height = height;
+		this.tileIds = tileIds;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTileId(int x, int y) {
+		return tileIds[y * width + x];
+	}
+
+	public void setTileId(int x, int y, int id) {
+		tileIds[y * width + x] = (short) id;
+	}
+
+	/***
+	 * Copy of every tile id, row by row.
+	 */
+	public short[] copyTileIds() {
+		return tileIds.clone();
+	}
+}
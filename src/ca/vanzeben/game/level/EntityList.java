@@ -0,0 +1,81 @@
+package ca.vanzeben.game.level;
+
+import java.util.Arrays;
+
+import ca.vanzeben.game.entities.Entity;
+
+/***
+ * Array backed list of the entities in a level.
+ * 
+ * Order is not preserved: removeAt() moves the last entity into the hole, so
+ * removing is O(1) instead of shifting everything after it down. Entities
+ * created while the list is being walked (e.g. a Tower firing during tick())
+ * go into addLater() and only join the list when applyPendingAdds() is called.
+ */
+public class EntityList {
+	private Entity[] entities = new Entity[64];
+	private int size = 0;
+
+	private Entity[] pending = new Entity[16];
+	private int numPending = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public Entity get(int index) {
+		return entities[index];
+	}
+
+	/***
+	 * Add an entity to the end of the list right away.
+	 */
+	public void add(Entity e) {
+		if (size == entities.length) {
+			entities = Arrays.copyOf(entities, size * 2);
+		}
+		entities[size++] = e;
+	}
+
+	/***
+	 * Add an entity once applyPendingAdds() is next called.
+	 */
+	public void addLater(Entity e) {
+		if (numPending == pending.length) {
+			pending = Arrays.copyOf(pending, numPending * 2);
+		}
+		pending[numPending++] = e;
+	}
+
+	/***
+	 * Move entities passed to addLater() into the list. They are appended in the
+	 * order they were added, starting at the old size().
+	 */
+	public void applyPendingAdds() {
+		for (int i = 0; i < numPending; i++) {
+			add(pending[i]);
+			pending[i] = null;
+		}
+		numPending = 0;
+	}
+
+	/***
+	 * Remove the entity at index by moving the last entity into its place.
+	 * 
+	 * @return the removed entity
+	 */
+	public Entity removeAt(int index) {
+		Entity removed = entities[index];
+		size--;
+		entities[index] = entities[size];
+		entities[size] = null;
+		return removed;
+	}
+
+	public void clear() {
+		Arrays.fill(entities, 0, size, null);
+		size = 0;
+		Arrays.fill(pending, 0, numPending, null);
+		numPending = 0;
+	}
+}
@@ -0,0 +1,220 @@
+package ca.vanzeben.game.level;
+
+import java.util.Arrays;
+
+/***
+ * Which way to walk from each tile to reach a target, for any number of
+ * entities chasing the same thing. A breadth first search out from the
+ * target's tile over the non-solid tiles gives every tile its distance in
+ * steps; each tile then points at the neighbour closest to the target. Chasers
+ * look up the direction for the tile they're on instead of heading straight
+ * for the target, so they walk around walls rather than into them.
+ *
+ * Only the tiles within radius of the target are searched. update() searches
+ * again when the target moves to another tile or a tile in the SolidTileMask
+ * changes, and does nothing otherwise.
+ */
+public class FlowField {
+	/***
+	 * Returned by getDirection() where there's no way to the target, the tile is
+	 * outside the searched area or it is the target's own tile.
+	 */
+	public static final int NONE = -1;
+
+	// Tile offsets of the eight directions, clockwise from east (y is down).
+	// Orthogonal directions come first so they win ties.
+	private static final int[] STEP_X = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] STEP_Y = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+	private final SolidTileMask solidTiles;
+	private final int tileSize;
+	private final int windowWidth, windowHeight;
+
+	// The searched tiles, windowWidth x windowHeight with their upper left tile
+	// at (originX, originY). distance is -1 for tiles not reached.
+	private final int[] distance;
+	private final byte[] direction;
+	private final int[] queue;
+	private int originX, originY;
+
+	private int targetTileX = Integer.MIN_VALUE, targetTileY = Integer.MIN_VALUE;
+	private int searchedVersion = -1;
+	private int numUpdates = 0;
+	private long lastUpdateNanos = 0;
+
+	/***
+	 * @param solidTiles
+	 *          the level's solid tiles
+	 * @param tileSize
+	 *          world pixels per tile
+	 * @param radius
+	 *          farthest a searched tile can be from the target's tile, in tiles
+	 *          along x or y
+	 */
+	public FlowField(SolidTileMask solidTiles, int tileSize, int radius) {
+		this.solidTiles = solidTiles;
+		this.tileSize = tileSize;
+		this.windowWidth = Math.max(1, Math.min(radius * 2 + 1, solidTiles.getWidth()));
+		this.windowHeight = Math.max(1, Math.min(radius * 2 + 1, solidTiles.getHeight()));
+
+		int numTiles = windowWidth * windowHeight;
+		this.distance = new int[numTiles];
+		this.direction = new byte[numTiles];
+		this.queue = new int[numTiles];
+		Arrays.fill(distance, -1);
+		Arrays.fill(direction, (byte) NONE);
+	}
+
+	/***
+	 * Point the field at world coordinates (targetX, targetY), searching again
+	 * if the target's tile or any solid tile has changed since the last search.
+	 *
+	 * @return true if it searched
+	 */
+	public boolean update(int targetX, int targetY) {
+		int tileX = Math.floorDiv(targetX, tileSize);
+		int tileY = Math.floorDiv(targetY, tileSize);
+		if (tileX == targetTileX && tileY == targetTileY
+				&& solidTiles.getVersion() == searchedVersion) {
+			return false;
+		}
+
+		long start = System.nanoTime();
+		targetTileX = tileX;
+		targetTileY = tileY;
+		searchedVersion = solidTiles.getVersion();
+		search();
+		lastUpdateNanos = System.nanoTime() - start;
+		numUpdates++;
+		return true;
+	}
+
+	private void search() {
+		Arrays.fill(distance, -1);
+		Arrays.fill(direction, (byte) NONE);
+
+		// Keep the window inside the map so none of it is wasted
+		originX = Math.max(0, Math.min(targetTileX - windowWidth / 2,
+				solidTiles.getWidth() - windowWidth));
+		originY = Math.max(0, Math.min(targetTileY - windowHeight / 2,
+				solidTiles.getHeight() - windowHeight));
+
+		int startX = targetTileX - originX;
+		int startY = targetTileY - originY;
+		if (startX < 0 || startX >= windowWidth || startY < 0
+				|| startY >= windowHeight) {
+			return; // target is off the map
+		}
+
+		// Breadth first out from the target. The target's own tile is searched
+		// from even if it is solid, e.g. a player standing in a doorway.
+		int head = 0, tail = 0;
+		distance[startY * windowWidth + startX] = 0;
+		queue[tail++] = startY * windowWidth + startX;
+		while (head < tail) {
+			int index = queue[head++];
+			int x = index % windowWidth;
+			int y = index / windowWidth;
+			int next = distance[index] + 1;
+			for (int d = 0; d < 4; d++) {
+				int nx = x + STEP_X[d];
+				int ny = y + STEP_Y[d];
+				if (nx < 0 || nx >= windowWidth || ny < 0 || ny >= windowHeight) {
+					continue;
+				}
+				int neighbour = ny * windowWidth + nx;
+				if (distance[neighbour] < 0
+						&& !solidTiles.isSolid(originX + nx, originY + ny)) {
+					distance[neighbour] = next;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+
+		// Each reached tile points at its closest neighbour. Diagonals only count
+		// when both tiles beside them are open, so chasers don't cut corners.
+		for (int i = 1; i < tail; i++) {
+			int index = queue[i];
+			int x = index % windowWidth;
+			int y = index / windowWidth;
+			int best = NONE;
+			int bestDistance = distance[index];
+			for (int d = 0; d < 8; d++) {
+				int nx = x + STEP_X[d];
+				int ny = y + STEP_Y[d];
+				int dist = distanceInWindow(nx, ny);
+				if (dist < 0 || dist >= bestDistance) {
+					continue;
+				}
+				if (d >= 4 && (distanceInWindow(nx, y) < 0 || distanceInWindow(x, ny) < 0)) {
+					continue;
+				}
+				best = d;
+				bestDistance = dist;
+			}
+			direction[index] = (byte) best;
+		}
+	}
+
+	private int distanceInWindow(int x, int y) {
+		if (x < 0 || x >= windowWidth || y < 0 || y >= windowHeight) {
+			return -1;
+		}
+		return distance[y * windowWidth + x];
+	}
+
+	/***
+	 * Which way to head from world coordinates (x, y): pass it to getStepX() and
+	 * getStepY() for the next tile to make for. NONE if there's no path from
+	 * there, it is outside the searched area or it's on the target's tile.
+	 */
+	public int getDirection(int x, int y) {
+		int tileX = Math.floorDiv(x, tileSize) - originX;
+		int tileY = Math.floorDiv(y, tileSize) - originY;
+		if (tileX < 0 || tileX >= windowWidth || tileY < 0 || tileY >= windowHeight) {
+			return NONE;
+		}
+		return direction[tileY * windowWidth + tileX];
+	}
+
+	/***
+	 * Steps from the tile at world coordinates (x, y) to the target's tile, or -1
+	 * if it can't be reached or is outside the searched area.
+	 */
+	public int getDistance(int x, int y) {
+		return distanceInWindow(Math.floorDiv(x, tileSize) - originX,
+				Math.floorDiv(y, tileSize) - originY);
+	}
+
+	/***
+	 * Tiles to move along x for a direction from getDirection().
+	 */
+	public static int getStepX(int direction) {
+		return STEP_X[direction];
+	}
+
+	/***
+	 * Tiles to move along y for a direction from getDirection().
+	 */
+	public static int getStepY(int direction) {
+		return STEP_Y[direction];
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/***
+	 * Number of times the field has been searched.
+	 */
+	public int getNumUpdates() {
+		return numUpdates;
+	}
+
+	/***
+	 * How long the last search took.
+	 */
+	public long getLastUpdateNanos() {
+		return lastUpdateNanos;
+	}
+}
@@ -1,21 +1,28 @@
 package ca.vanzeben.game.level;
 
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import ca.vanzeben.game.Game;
 import ca.vanzeben.game.entities.Fireball;
+import ca.vanzeben.game.entities.FireballPool;
 import ca.vanzeben.game.entities.Coin;
 import ca.vanzeben.game.entities.Entity;
+import ca.vanzeben.game.entities.EntityStore;
 import ca.vanzeben.game.entities.Player;
+import ca.vanzeben.game.entities.StoredEntity;
 import ca.vanzeben.game.entities.Tower;
 import ca.vanzeben.game.entities.Wumpus;
+import ca.vanzeben.game.gfx.RenderSnapshot;
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.tiles.Tile;
 
 public class Level {
@@ -33,18 +40,76 @@ public class Level {
 																		// this
 																		// large
 
-	private int[][] levelTileIds;
+	public static final int CHUNK_SIZE = 8; // width and height of a chunk in tiles
+
+	// How far from the player, in tiles, Wumpus find their way around walls.
+	// Farther away they head straight for the player.
+	public static final int FLOW_FIELD_RADIUS = 48;
+
+	private TileMap tileMap;
 	private int levelImageWidth;
 	private int levelImageHeight;
 	private String imagePath;
 	private BufferedImage levelSourceimage;
+	private long imageDecodeNanos, tileMappingNanos; // time spent loading
 
 	private Player player;
 
-	private ArrayList<Entity> entityList;
+	private EntityList entityList;
+	private FireballPool fireballPool = new FireballPool();
+	private EntityStore entityStore;
+	private ParallelEntityTicker entityTicker = new ParallelEntityTicker(1);
+	private boolean ticking = false;
+	private SpatialGrid entityGrid;
+	private ArrayList<Entity> collisionCandidates = new ArrayList<Entity>();
+
+	// Entities found on screen by renderEntities(), and how many weren't
+	private ArrayList<Entity> visibleEntities = new ArrayList<Entity>();
+	private int numEntitiesDrawn, numEntitiesCulled;
+
+	// Entities are drawn grouped by sprite sheet, and in the order they were
+	// added within a sheet so overlapping entities don't flicker
+	private static final Comparator<Entity> drawOrder = new Comparator<Entity>() {
+		public int compare(Entity a, Entity b) {
+			int bySheet = Integer.compare(a.getSheet().getId(), b.getSheet().getId());
+			return bySheet != 0 ? bySheet : Integer.compare(a.getId(), b.getId());
+		}
+	};
+
+	// Chunks are created when first drawn and dropped when they scroll away, so
+	// huge levels don't need a chunk object for every part of the map. Only
+	// renderTiles() touches them; tile changes reach it through dirtyTileAreas
+	// so it can run on a different thread to tick().
+	private ConcurrentLinkedQueue<int[]> dirtyTileAreas = new ConcurrentLinkedQueue<int[]>();
+	private HashMap<Long, TileChunk> chunks = new HashMap<Long, TileChunk>();
+	private int numChunksWide, numChunksHigh;
+	private ArrayList<TileChunk> bakedChunks = new ArrayList<TileChunk>();
+	private int bakedLayersVersion = Tile.getLayersVersion(); // see Tile.addDisplayLayer()
+
+	// With a render thread (see useRenderThread()), chunks are drawn from this
+	// copy of the tiles instead of tileMap. Tiles changed by the game thread
+	// collect in unpublishedTileAreas until recordTileChanges() puts them in a
+	// RenderSnapshot, and reach the copy through applyTileChanges().
+	private ArrayTileMap renderTileMap;
+	private ArrayList<int[]> unpublishedTileAreas;
+
+	// Which tiles are solid, for collision checks
+	private SolidTileMask solidTiles;
+
+	// Which way to walk to reach the player from each tile near them
+	private FlowField playerFlowField;
+
+	// Chunks with tiles changed since the last save, by cy * numChunksWide + cx
+	private BitSet changedChunks = new BitSet();
+	private int nextEntityId = 1;
+
+	// Last player position, used to tell a PagedTileMap which way we are heading
+	private int lastPlayerX, lastPlayerY;
 
 	public Level(String imagePath) {
-		entityList = new ArrayList<Entity>();
+		entityList = new EntityList();
+		entityGrid = new SpatialGrid(tileSize * 2);
+		entityStore = new EntityStore(this);
 
 		if (imagePath != null) {
 			this.imagePath = imagePath;
@@ -52,51 +117,272 @@ public class Level {
 		} else {
 			this.levelImageWidth = 64;
 			this.levelImageHeight = 64;
-			levelTileIds = new int[levelImageHeight][levelImageWidth];
+			tileMap = new ArrayTileMap(levelImageWidth, levelImageHeight);
 			this.generateLevel();
 		}
 
+		this.setUpChunks();
+		this.setUpSolidTiles();
 	}
 
-	private void loadLevelFromFile() {
-		try {
-			this.levelSourceimage = ImageIO.read(Level.class.getResource(this.imagePath));
-			this.levelImageWidth = this.levelSourceimage.getWidth();
-			this.levelImageHeight = this.levelSourceimage.getHeight();
-			levelTileIds = new int[levelImageHeight][levelImageWidth];
-			this.loadTiles();
-		} catch (IOException e) {
-			e.printStackTrace();
+	/***
+	 * Create a level from a map of tiles, e.g. a PagedTileMap for a world too
+	 * big to fit in memory. Such a level has no source image, so it can't be
+	 * saved back to one.
+	 * 
+	 * @param tileMap
+	 */
+	public Level(TileMap tileMap) {
+		entityList = new EntityList();
+		entityGrid = new SpatialGrid(tileSize * 2);
+		entityStore = new EntityStore(this);
+
+		this.tileMap = tileMap;
+		this.levelImageWidth = tileMap.getWidth();
+		this.levelImageHeight = tileMap.getHeight();
+
+		if (tileMap instanceof PagedTileMap) {
+			PagedTileMap pagedMap = (PagedTileMap) tileMap;
+			pagedMap.setMissingTileId(Tile.VOID.getId());
+			pagedMap.setRegionListener(new PagedTileMap.RegionListener() {
+				public void regionLoaded(int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+					markTilesDirty(firstTileX, firstTileY, tilesWide, tilesHigh);
+					solidTiles.update(Level.this.tileMap, firstTileX, firstTileY, tilesWide, tilesHigh);
+				}
+
+				public void regionUnloaded(int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+					// Reads as missing tiles (VOID) until it is loaded again
+					solidTiles.update(Level.this.tileMap, firstTileX, firstTileY, tilesWide, tilesHigh);
+				}
+			});
+		}
+
+		this.setUpChunks();
+		this.setUpSolidTiles();
+	}
+
+	private void setUpChunks() {
+		numChunksWide = (levelImageWidth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		numChunksHigh = (levelImageHeight + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+	// Regions of a paged map that haven't been loaded yet read as VOID, so
+	// start with everything solid rather than reading every tile
+	private void setUpSolidTiles() {
+		solidTiles = new SolidTileMask(levelImageWidth, levelImageHeight);
+		if (tileMap instanceof PagedTileMap) {
+			solidTiles.fillSolid();
+		} else if (tileMap != null) {
+			solidTiles.update(tileMap, 0, 0, levelImageWidth, levelImageHeight);
+		}
+		playerFlowField = new FlowField(solidTiles, tileSize, FLOW_FIELD_RADIUS);
+	}
+
+	private static long chunkKey(int cx, int cy) {
+		return ((long) cy << 32) | (cx & 0xFFFFFFFFL);
+	}
+
+	private TileChunk getChunk(int cx, int cy) {
+		long key = chunkKey(cx, cy);
+		TileChunk chunk = chunks.get(key);
+		if (chunk == null) {
+			int tilesWide = Math.min(CHUNK_SIZE, levelImageWidth - cx * CHUNK_SIZE);
+			int tilesHigh = Math.min(CHUNK_SIZE, levelImageHeight - cy * CHUNK_SIZE);
+			chunk = new TileChunk(cx, cy, tilesWide, tilesHigh);
+			chunks.put(key, chunk);
+		}
+		return chunk;
+	}
+
+	/***
+	 * Make sure any pre-rendered chunks covering these tiles are drawn again.
+	 * Takes effect the next time tiles are rendered.
+	 */
+	private void markTilesDirty(int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+		int[] area = new int[] { firstTileX, firstTileY, tilesWide, tilesHigh };
+		if (unpublishedTileAreas != null) {
+			unpublishedTileAreas.add(area);
+		} else {
+			dirtyTileAreas.add(area);
 		}
 	}
 
-	private void loadTiles() {
-		int[] tileColours = this.levelSourceimage.getRGB(0, 0, levelImageWidth, levelImageHeight, null, 0,
-				levelImageWidth);
+	/***
+	 * Prepare for renderTiles() to run on a different thread from tick(). From
+	 * now on tiles are drawn from a copy that only changes when
+	 * applyTileChanges() is given a snapshot recorded by recordTileChanges().
+	 * Call before the render thread starts.
+	 *
+	 * @throws IllegalStateException
+	 *           for a level whose tiles come from a PagedTileMap, which loads
+	 *           regions on the game thread as tiles are drawn
+	 */
+	public void useRenderThread() {
+		if (tileMap instanceof PagedTileMap) {
+			throw new IllegalStateException("Paged levels must be rendered on the game thread");
+		}
+		if (renderTileMap != null) {
+			return;
+		}
+
+		renderTileMap = new ArrayTileMap(levelImageWidth, levelImageHeight);
 		for (int y = 0; y < levelImageHeight; y++) {
 			for (int x = 0; x < levelImageWidth; x++) {
-				tileCheck: for (Tile t : Tile.tiles) {
-					if (t != null && t.getLevelColour() == tileColours[x + y * levelImageWidth]) {
-						this.levelTileIds[y][x] = t.getId();
-						break tileCheck;
-					}
+				renderTileMap.setTileId(x, y, tileMap.getTileId(x, y));
+			}
+		}
+		unpublishedTileAreas = new ArrayList<int[]>();
+	}
+
+	/***
+	 * Game thread: copy the ids of tiles changed since the last call into
+	 * snapshot. Does nothing unless useRenderThread() has been called.
+	 */
+	public void recordTileChanges(RenderSnapshot snapshot) {
+		if (unpublishedTileAreas == null) {
+			return;
+		}
+
+		// Blocks carried over from a snapshot the render thread skipped are read
+		// again, so they are no older than the rest of this snapshot
+		for (int block = 0; block < snapshot.getNumTileBlocks(); block++) {
+			copyTileIds(snapshot, snapshot.getTileBlockX(block), snapshot.getTileBlockY(block),
+					snapshot.getTileBlockWidth(block), snapshot.getTileBlockHeight(block),
+					snapshot.getTileBlockOffset(block));
+		}
+
+		for (int[] area : unpublishedTileAreas) {
+			int firstTileX = Math.max(0, area[0]);
+			int firstTileY = Math.max(0, area[1]);
+			int tilesWide = Math.min(levelImageWidth, area[0] + area[2]) - firstTileX;
+			int tilesHigh = Math.min(levelImageHeight, area[1] + area[3]) - firstTileY;
+			if (tilesWide > 0 && tilesHigh > 0) {
+				copyTileIds(snapshot, firstTileX, firstTileY, tilesWide, tilesHigh,
+						snapshot.addTileBlock(firstTileX, firstTileY, tilesWide, tilesHigh));
+			}
+		}
+		unpublishedTileAreas.clear();
+	}
+
+	private void copyTileIds(RenderSnapshot snapshot, int firstTileX, int firstTileY, int tilesWide,
+			int tilesHigh, int offset) {
+		int[] ids = snapshot.getTileIds();
+		for (int y = 0; y < tilesHigh; y++) {
+			for (int x = 0; x < tilesWide; x++) {
+				ids[offset++] = tileMap.getTileId(firstTileX + x, firstTileY + y);
+			}
+		}
+	}
+
+	/***
+	 * Render thread: bring the tiles drawn up to date with the changes carried
+	 * by snapshot.
+	 */
+	public void applyTileChanges(RenderSnapshot snapshot) {
+		if (renderTileMap == null) {
+			return;
+		}
+		int[] ids = snapshot.getTileIds();
+		for (int block = 0; block < snapshot.getNumTileBlocks(); block++) {
+			int firstTileX = snapshot.getTileBlockX(block);
+			int firstTileY = snapshot.getTileBlockY(block);
+			int tilesWide = snapshot.getTileBlockWidth(block);
+			int tilesHigh = snapshot.getTileBlockHeight(block);
+			int offset = snapshot.getTileBlockOffset(block);
+			for (int y = 0; y < tilesHigh; y++) {
+				for (int x = 0; x < tilesWide; x++) {
+					renderTileMap.setTileId(firstTileX + x, firstTileY + y, ids[offset++]);
+				}
+			}
+			markChunksDirty(firstTileX, firstTileY, tilesWide, tilesHigh);
+		}
+	}
+
+	// The tile chunks are drawn with: the render thread's copy if there is one
+	Tile getRenderedTile(int x, int y) {
+		if (renderTileMap == null) {
+			return getTileAtSourceImageCoordinates(x, y);
+		}
+		if (0 > x || x >= levelImageWidth || 0 > y || y >= levelImageHeight) {
+			return Tile.VOID;
+		}
+		return Tile.tiles.get(renderTileMap.getTileId(x, y));
+	}
+
+	private void applyDirtyTileAreas() {
+		int[] area;
+		while ((area = dirtyTileAreas.poll()) != null) {
+			markChunksDirty(area[0], area[1], area[2], area[3]);
+		}
+	}
+
+	private void markChunksDirty(int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+		for (int cy = firstTileY / CHUNK_SIZE; cy <= (firstTileY + tilesHigh - 1) / CHUNK_SIZE; cy++) {
+			for (int cx = firstTileX / CHUNK_SIZE; cx <= (firstTileX + tilesWide - 1) / CHUNK_SIZE; cx++) {
+				TileChunk chunk = chunks.get(chunkKey(cx, cy));
+				if (chunk != null) {
+					chunk.markDirty();
 				}
 			}
 		}
 	}
 
-	@SuppressWarnings("unused")
-	private void saveLevelToFile() {
+	private void loadLevelFromFile() {
 		try {
-			ImageIO.write(levelSourceimage, "png", new File(Level.class.getResource(this.imagePath).getFile()));
+			LevelImageLoader loader = new LevelImageLoader();
+			loader.load(this.imagePath, Tile.getColourIndex());
+
+			this.levelSourceimage = loader.getImage();
+			this.levelImageWidth = this.levelSourceimage.getWidth();
+			this.levelImageHeight = this.levelSourceimage.getHeight();
+			this.tileMap = new ArrayTileMap(levelImageWidth, levelImageHeight, loader.getTileIds());
+			this.imageDecodeNanos = loader.getDecodeNanos();
+			this.tileMappingNanos = loader.getMapNanos();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
 	public void setTileAt(int x, int y, Tile newTile) {
-		this.levelTileIds[y][x] = newTile.getId();
-		levelSourceimage.setRGB(x, y, newTile.getLevelColour());
+		tileMap.setTileId(x, y, newTile.getId());
+		if (levelSourceimage != null) {
+			levelSourceimage.setRGB(x, y, newTile.getLevelColour());
+		}
+		markTilesDirty(x, y, 1, 1);
+		solidTiles.update(tileMap, x, y, 1, 1);
+		changedChunks.set((y / CHUNK_SIZE) * numChunksWide + x / CHUNK_SIZE);
+	}
+
+	/***
+	 * Overwrite a block of tiles with ids read from a save. Doesn't count as a
+	 * change to be saved.
+	 */
+	void restoreTiles(int firstTileX, int firstTileY, int tilesWide, int tilesHigh, short[] tileIds) {
+		for (int y = 0; y < tilesHigh; y++) {
+			for (int x = 0; x < tilesWide; x++) {
+				int id = tileIds[y * tilesWide + x];
+				tileMap.setTileId(firstTileX + x, firstTileY + y, id);
+				if (levelSourceimage != null) {
+					levelSourceimage.setRGB(firstTileX + x, firstTileY + y, Tile.tiles.get(id).getLevelColour());
+				}
+			}
+		}
+		markTilesDirty(firstTileX, firstTileY, tilesWide, tilesHigh);
+		solidTiles.update(tileMap, firstTileX, firstTileY, tilesWide, tilesHigh);
+	}
+
+	/***
+	 * Chunks whose tiles have changed since the last call, as indexes cy *
+	 * getNumChunksWide() + cx.
+	 */
+	BitSet takeChangedChunks() {
+		BitSet changed = changedChunks;
+		changedChunks = new BitSet();
+		return changed;
+	}
+
+	int getNumChunksWide() {
+		return numChunksWide;
 	}
 
 	public Player getPlayer() {
@@ -107,32 +393,54 @@ public class Level {
 		for (int y = 0; y < levelImageHeight; y++) {
 			for (int x = 0; x < levelImageWidth; x++) {
 				if (x * y % 10 < 7) {
-					levelTileIds[y][x] = Tile.GRASS.getId();
+					tileMap.setTileId(x, y, Tile.GRASS.getId());
 				} else {
-					levelTileIds[y][x] = Tile.STONE.getId();
+					tileMap.setTileId(x, y, Tile.STONE.getId());
 				}
 			}
 		}
+		if (solidTiles != null) {
+			solidTiles.update(tileMap, 0, 0, levelImageWidth, levelImageHeight);
+		}
 	}
 
 	/***
 	 * Run tick() on everything in this level to prepare for next game frame.
 	 */
 	public void tick() {
+		if (tileMap instanceof PagedTileMap) {
+			updatePagedFocus((PagedTileMap) tileMap);
+		}
+
+		// Remember where everything was, so it can be drawn between ticks
+		player.savePreviousPosition();
+		for (int i = 0; i < entityList.size(); i++) {
+			entityList.get(i).savePreviousPosition();
+		}
+
 		// Run tick() for all entities
+		ticking = true;
 		player.tick();
+		playerFlowField.update(player.centerX(), player.centerY());
+
+		// Entities that only change themselves (Wumpus, Fireball) first, spread
+		// over the ticker's threads. Then the rest, in order, on this thread.
+		entityTicker.tickIndependent(entityList);
 
 		for (int i = 0; i < this.entityList.size(); i++) {
 			Entity entity = entityList.get(i);
 
-			if (entity.isDead()) {
-				entityList.remove(entity);
-				i--;
-			} else {
+			if (!entity.isDead() && !entity.canTickInParallel()) {
 				entity.tick();
 			}
 		}
 
+		for (int i = 0; i < this.entityList.size(); i++) {
+			entityGrid.update(entityList.get(i));
+		}
+
+		tickEntityStore();
+
 		// Run tick() for all tiles
 		for (Tile t : Tile.tiles) {
 			if (t == null) {
@@ -142,32 +450,286 @@ public class Level {
 		}
 
 		runPlayerCollisionDetect();
+
+		removeDeadEntities();
+		addPendingEntities();
+		ticking = false;
+	}
+
+	// Keep the regions around the player loaded, prefetching in the direction
+	// the player is moving
+	private void updatePagedFocus(PagedTileMap pagedMap) {
+		int dirX = Integer.signum(player.x() - lastPlayerX);
+		int dirY = Integer.signum(player.y() - lastPlayerY);
+		lastPlayerX = player.x();
+		lastPlayerY = player.y();
+
+		pagedMap.updateFocus(Math.max(0, player.centerX()) / tileSize, Math.max(0, player.centerY()) / tileSize,
+				dirX, dirY);
+	}
+
+	// Update all stored entities at once: they all chase the player
+	private void tickEntityStore() {
+		if (entityStore.size() == 0) {
+			return;
+		}
+
+		entityStore.steerAlong(playerFlowField, player.centerX(), player.centerY());
+		entityStore.resolveTileCollisions();
+		entityStore.integrate();
+
+		for (int i = 0; i < entityStore.size(); i++) {
+			entityGrid.update(entityStore.get(i));
+		}
+	}
+
+	private void removeDeadEntities() {
+		for (int i = 0; i < entityStore.size(); i++) {
+			if (entityStore.isDead(i)) {
+				entityGrid.remove(entityStore.get(i));
+			}
+		}
+		entityStore.sweepDead();
+
+		// Walk backwards so the entity swapped into a hole has already been checked
+		for (int i = entityList.size() - 1; i >= 0; i--) {
+			Entity entity = entityList.get(i);
+
+			if (entity.isDead()) {
+				entityList.removeAt(i);
+				entityGrid.remove(entity);
+
+				if (entity instanceof Fireball) {
+					fireballPool.free((Fireball) entity);
+				}
+			}
+		}
+	}
+
+	private void addPendingEntities() {
+		int firstNew = entityList.size();
+		entityList.applyPendingAdds();
+
+		for (int i = firstNew; i < entityList.size(); i++) {
+			entityGrid.insert(entityList.get(i));
+		}
+	}
+
+	/***
+	 * Add an entity to the level. Entities added while the level is ticking
+	 * (e.g. a fireball fired by a tower) are added at the end of the tick.
+	 * 
+	 * @param e
+	 */
+	public void addEntity(Entity e) {
+		if (e.getId() == 0) {
+			e.setId(nextEntityId++);
+		} else {
+			nextEntityId = Math.max(nextEntityId, e.getId() + 1);
+		}
+
+		if (ticking) {
+			entityList.addLater(e);
+		} else {
+			entityList.add(e);
+			entityGrid.insert(e);
+		}
+	}
+
+	/***
+	 * Remove every entity except the player, e.g. before restoring a save.
+	 */
+	void clearEntities() {
+		for (int i = 0; i < entityStore.size(); i++) {
+			entityStore.get(i).markAsDead();
+		}
+		entityStore.sweepDead();
+		entityList.clear();
+		entityGrid.clear();
+	}
+
+	/***
+	 * Number of entities in the level, not counting the player or entities in
+	 * the EntityStore.
+	 */
+	public int getNumEntities() {
+		return entityList.size();
+	}
+
+	Entity getEntity(int index) {
+		return entityList.get(index);
+	}
+
+	/***
+	 * Set how many threads are used to tick entities that can be ticked in
+	 * parallel. 1 (the default) ticks everything on the game thread. The level
+	 * ends up in the same state whatever this is set to.
+	 * 
+	 * @param parallelism
+	 */
+	public void setTickParallelism(int parallelism) {
+		if (parallelism == entityTicker.getParallelism()) {
+			return;
+		}
+		entityTicker.shutdown();
+		entityTicker = new ParallelEntityTicker(parallelism);
+	}
+
+	public int getTickParallelism() {
+		return entityTicker.getParallelism();
 	}
 
 	private void runPlayerCollisionDetect() {
-		for (Entity e : this.entityList) {
+		collisionCandidates.clear();
+		entityGrid.queryArea(player.leftX(), player.topY(), player.rightX(), player.bottomY(), collisionCandidates);
+
+		for (int i = 0; i < collisionCandidates.size(); i++) {
+			Entity e = collisionCandidates.get(i);
 			if (player.isHitting(e)) {
 				player.handleCollision(e);
 			}
 		}
+		collisionCandidates.clear();
+	}
 
+	/***
+	 * Add every entity (not including the player) whose bounding box overlaps the
+	 * box from (left, top) to (right, bottom) in world coordinates to out.
+	 */
+	public void getEntitiesInArea(int left, int top, int right, int bottom, List<Entity> out) {
+		entityGrid.queryArea(left, top, right, bottom, out);
 	}
 
+	/***
+	 * Add every entity (not including the player) within radius of world
+	 * coordinates (x, y) to out.
+	 */
+	public void getEntitiesNear(int x, int y, int radius, List<Entity> out) {
+		entityGrid.queryRadius(x, y, radius, out);
+	}
+
+	/***
+	 * Draw the visible part of the level. Tiles are drawn a whole pre-rendered
+	 * chunk at a time, then animated tiles are drawn on top of the chunks.
+	 * Chunks that have scrolled well off screen give up their images.
+	 * 
+	 * May be called on a different thread to tick() (see Game.RENDER_THREAD),
+	 * except for levels made from a PagedTileMap.
+	 */
 	public void renderTiles(Screen screen) {
-		for (int tileY = screen.getTopY() / tileSize; tileY < screen.getBottomY() / tileSize + 1; tileY++) {
-			for (int tileX = (screen.getLeftX() / tileSize); tileX < screen.getRightX() / tileSize + 1; tileX++) {
-				getTileAtSourceImageCoordinates(tileX, tileY).render(screen, this, tileX * tileSize, tileY * tileSize,
-						tileSize, tileSize);
+		int chunkPixels = CHUNK_SIZE * tileSize;
+		applyDirtyTileAreas();
+
+		// A tile's display layers changed: every chunk might show it
+		if (bakedLayersVersion != Tile.getLayersVersion()) {
+			bakedLayersVersion = Tile.getLayersVersion();
+			for (TileChunk chunk : bakedChunks) {
+				chunk.markDirty();
+			}
+		}
+
+		if (screen.getLeftX() < 0 || screen.getTopY() < 0 || screen.getRightX() > getLevelWidth()
+				|| screen.getBottomY() > getLevelHeight()) {
+			renderVoidTiles(screen);
+		}
+
+		int firstChunkX = Math.max(0, screen.getLeftX() / chunkPixels);
+		int firstChunkY = Math.max(0, screen.getTopY() / chunkPixels);
+		int lastChunkX = Math.min(numChunksWide - 1, (screen.getRightX() - 1) / chunkPixels);
+		int lastChunkY = Math.min(numChunksHigh - 1, (screen.getBottomY() - 1) / chunkPixels);
+
+		if (tileMap instanceof PagedTileMap) {
+			((PagedTileMap) tileMap).requestArea(firstChunkX * CHUNK_SIZE, firstChunkY * CHUNK_SIZE,
+					(lastChunkX + 1) * CHUNK_SIZE - 1, (lastChunkY + 1) * CHUNK_SIZE - 1);
+		}
+
+		for (int cy = firstChunkY; cy <= lastChunkY; cy++) {
+			for (int cx = firstChunkX; cx <= lastChunkX; cx++) {
+				TileChunk chunk = getChunk(cx, cy);
+				if (chunk.isDirty()) {
+					if (!chunk.isBaked()) {
+						bakedChunks.add(chunk);
+					}
+					chunk.bake(this, screen.getSpriteCache());
+				}
+				screen.renderImage(chunk.getImage(), chunk.getWorldX(), chunk.getWorldY());
+			}
+		}
+
+		// Animated tiles are not part of the chunk images
+		for (int cy = firstChunkY; cy <= lastChunkY; cy++) {
+			for (int cx = firstChunkX; cx <= lastChunkX; cx++) {
+				getChunk(cx, cy).renderAnimatedTiles(screen, this);
+			}
+		}
+
+		releaseDistantChunks(firstChunkX - 1, firstChunkY - 1, lastChunkX + 1, lastChunkY + 1);
+	}
+
+	// Draw VOID wherever the screen extends past the edge of the level
+	private void renderVoidTiles(Screen screen) {
+		for (int tileY = Math.floorDiv(screen.getTopY(), tileSize); tileY < screen.getBottomY() / tileSize
+				+ 1; tileY++) {
+			for (int tileX = Math.floorDiv(screen.getLeftX(), tileSize); tileX < screen.getRightX() / tileSize
+					+ 1; tileX++) {
+				if (0 > tileX || tileX >= levelImageWidth || 0 > tileY || tileY >= levelImageHeight) {
+					Tile.VOID.render(screen, this, tileX * tileSize, tileY * tileSize, tileSize, tileSize);
+				}
 			}
 		}
 	}
 
+	// Free the images of chunks outside the given range of chunk coordinates
+	private void releaseDistantChunks(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY) {
+		for (int i = bakedChunks.size() - 1; i >= 0; i--) {
+			TileChunk chunk = bakedChunks.get(i);
+			if (chunk.getChunkX() < minChunkX || chunk.getChunkX() > maxChunkX || chunk.getChunkY() < minChunkY
+					|| chunk.getChunkY() > maxChunkY) {
+				chunk.release();
+				chunks.remove(chunkKey(chunk.getChunkX(), chunk.getChunkY()));
+				bakedChunks.set(i, bakedChunks.get(bakedChunks.size() - 1));
+				bakedChunks.remove(bakedChunks.size() - 1);
+			}
+		}
+	}
+
+	/***
+	 * Draw the player and every entity that is on screen. Entities are looked up
+	 * in the spatial grid, so ones far off screen cost nothing.
+	 */
 	public void renderEntities(Screen screen) {
 		player.render(screen);
 
-		for (Entity entity : entityList) {
-			entity.render(screen);
+		// Entities may be drawn up to a tick behind where the grid has them
+		int margin = tileSize;
+		visibleEntities.clear();
+		entityGrid.queryArea(screen.getLeftX() - margin, screen.getTopY() - margin, screen.getRightX() + margin,
+				screen.getBottomY() + margin, visibleEntities);
+		Collections.sort(visibleEntities, drawOrder);
+
+		for (int i = 0; i < visibleEntities.size(); i++) {
+			visibleEntities.get(i).render(screen);
 		}
+
+		numEntitiesDrawn = visibleEntities.size();
+		numEntitiesCulled = entityGrid.size() - numEntitiesDrawn;
+		visibleEntities.clear();
+	}
+
+	/***
+	 * Number of entities (not counting the player) drawn by the last call to
+	 * renderEntities().
+	 */
+	public int getNumEntitiesDrawn() {
+		return numEntitiesDrawn;
+	}
+
+	/***
+	 * Number of entities skipped by the last call to renderEntities() because
+	 * they were off screen.
+	 */
+	public int getNumEntitiesCulled() {
+		return numEntitiesCulled;
 	}
 
 	public Tile getTileTypeAtWorldCoordinates(int x, int y) {
@@ -179,15 +741,118 @@ public class Level {
 
 		// Game.getScreen().highlightTileAtWorldCoordinates(x, y, tileSize);
 
-		int tileId = levelTileIds[sourcey][sourcex];
+		int tileId = tileMap.getTileId(sourcex, sourcey);
 		return Tile.tiles.get(tileId);
 	}
 
+	/***
+	 * True if any tile overlapping the box with its upper left corner at world
+	 * coordinates (x, y) is solid or outside the level. Uses the solid tile
+	 * mask, so it costs a few bit tests per row of tiles covered.
+	 */
+	public boolean isAreaSolid(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return false;
+		}
+		return solidTiles.anySolid(Math.floorDiv(x, tileSize),
+				Math.floorDiv(y, tileSize), Math.floorDiv(x + width - 1, tileSize),
+				Math.floorDiv(y + height - 1, tileSize));
+	}
+
+	/***
+	 * True if the tile at world coordinates (x, y) is solid or outside the
+	 * level.
+	 */
+	public boolean isSolidAt(int x, int y) {
+		return solidTiles.isSolid(Math.floorDiv(x, tileSize),
+				Math.floorDiv(y, tileSize));
+	}
+
+	/***
+	 * How far the box with its upper left corner at world coordinates (x, y) can
+	 * move along x, up to dx, before it would overlap a solid tile (or leave the
+	 * level). Every column of tiles the box would cross is checked, so any speed
+	 * is handled in one call. Tiles the box already overlaps are ignored so
+	 * something stuck in a wall can get out. dx * (time of impact) is what's
+	 * returned: dx itself if nothing is in the way.
+	 */
+	public int sweepX(int x, int y, int width, int height, int dx) {
+		if (dx == 0 || width <= 0 || height <= 0) {
+			return dx;
+		}
+		int firstRow = Math.floorDiv(y, tileSize);
+		int lastRow = Math.floorDiv(y + height - 1, tileSize);
+
+		if (dx > 0) {
+			int edge = x + width - 1;
+			int from = Math.floorDiv(edge, tileSize) + 1;
+			int to = Math.floorDiv(edge + dx, tileSize);
+			if (from > to) {
+				return dx;
+			}
+			int hit = solidTiles.firstSolidColumn(firstRow, lastRow, from, to);
+			return hit > to ? dx : hit * tileSize - 1 - edge;
+		} else {
+			int from = Math.floorDiv(x, tileSize) - 1;
+			int to = Math.floorDiv(x + dx, tileSize);
+			if (from < to) {
+				return dx;
+			}
+			int hit = solidTiles.lastSolidColumn(firstRow, lastRow, from, to);
+			return hit < to ? dx : (hit + 1) * tileSize - x;
+		}
+	}
+
+	/***
+	 * Same as sweepX() along y.
+	 */
+	public int sweepY(int x, int y, int width, int height, int dy) {
+		if (dy == 0 || width <= 0 || height <= 0) {
+			return dy;
+		}
+		int firstColumn = Math.floorDiv(x, tileSize);
+		int lastColumn = Math.floorDiv(x + width - 1, tileSize);
+
+		if (dy > 0) {
+			int edge = y + height - 1;
+			int from = Math.floorDiv(edge, tileSize) + 1;
+			int to = Math.floorDiv(edge + dy, tileSize);
+			if (from > to) {
+				return dy;
+			}
+			int hit = solidTiles.firstSolidRow(firstColumn, lastColumn, from, to);
+			return hit > to ? dy : hit * tileSize - 1 - edge;
+		} else {
+			int from = Math.floorDiv(y, tileSize) - 1;
+			int to = Math.floorDiv(y + dy, tileSize);
+			if (from < to) {
+				return dy;
+			}
+			int hit = solidTiles.lastSolidRow(firstColumn, lastColumn, from, to);
+			return hit < to ? dy : (hit + 1) * tileSize - y;
+		}
+	}
+
+	public SolidTileMask getSolidTiles() {
+		return solidTiles;
+	}
+
+	/***
+	 * Flow field leading to the player, or null for any other target.
+	 */
+	public FlowField getFlowFieldToward(Entity target) {
+		return target == player ? playerFlowField : null;
+	}
+
+	public FlowField getPlayerFlowField() {
+		return playerFlowField;
+	}
+
 	public Tile getTileAtSourceImageCoordinates(int x, int y) {
 		if (0 > x || x >= levelImageWidth || 0 > y || y >= levelImageHeight)
 			return Tile.VOID;
 
-		int tileId = levelTileIds[y][x];
+		int tileId = tileMap.getTileId(x, y);
 		return Tile.tiles.get(tileId);
 	}
 
@@ -197,22 +862,40 @@ public class Level {
 
 	public void addCoin(int x, int y, int value) {
 		Coin c = new Coin(x, y, value, this);
-		entityList.add(c);
+		addEntity(c);
 	}
 
 	public void addWumpus(int x, int y) {
 		Wumpus w = new Wumpus(x, y, this, 5, player);
-		entityList.add(w);
+		addEntity(w);
+	}
+
+	/***
+	 * Add a Wumpus that lives in the level's EntityStore rather than as its own
+	 * object. Use this for large hordes; stored Wumpus always chase the player.
+	 * 
+	 * @return Entity view of the new Wumpus
+	 */
+	public StoredEntity addStoredWumpus(int x, int y) {
+		StoredEntity w = entityStore.spawn(x, y, 5, SpriteSheet.DungeonCrawl, Wumpus.WUMPUS_TILE_ROW,
+				Wumpus.WUMPUS_TILE_COL);
+		w.setId(nextEntityId++);
+		entityGrid.insert(w);
+		return w;
+	}
+
+	public EntityStore getEntityStore() {
+		return entityStore;
 	}
 
 	public void addFireball(int x, int y) {
-		Fireball b = new Fireball(x, y, this, 10);
-		entityList.add(b);
+		Fireball b = fireballPool.obtain(x, y, this, 10);
+		addEntity(b);
 	}
 
 	public void addTower(int x, int y) {
 		Tower t = new Tower(x, y, this);
-		entityList.add(t);
+		addEntity(t);
 	}
 
 	/***
@@ -257,6 +940,29 @@ public class Level {
 		return getLevelImageHeight() * this.tileSize;
 	}
 
+	/***
+	 * Time it took to decode the level image when the level was loaded, in
+	 * nanoseconds.
+	 * 
+	 * @return
+	 */
+	public long getImageDecodeNanos() {
+		return imageDecodeNanos;
+	}
+
+	/***
+	 * Time it took to turn the decoded level image into tiles, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public long getTileMappingNanos() {
+		return tileMappingNanos;
+	}
+
+	public TileMap getTileMap() {
+		return tileMap;
+	}
+
 	public int getTileDisplaySize() {
 		return this.tileSize;
 	}
@@ -0,0 +1,285 @@
+package ca.vanzeben.game.level;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.vanzeben.game.level.tiles.Tile;
+
+/***
+ * Compact binary level file. Loading one doesn't decode an image or match
+ * colours: the file is memory mapped and tiles are read straight out of the
+ * mapping (see MappedTileMap), so even huge levels open quickly and the grid
+ * is never copied onto the heap. Opening reads through the tiles once to check
+ * their ids.
+ * 
+ * Layout (big-endian):
+ * 
+ * <pre>
+ * int   magic "LVL1"
+ * int   version
+ * int   width (tiles)
+ * int   height (tiles)
+ * int   bytes per tile (1 or 2)
+ * int   number of spawns
+ * ...   width * height tile ids, row by row
+ * ...   spawns: byte type, int x, int y, int value (world coordinates)
+ * </pre>
+ * 
+ * A level image can be converted with main().
+ */
+public class LevelFile {
+	private static final int MAGIC = 0x4C564C31; // "LVL1"
+	private static final int VERSION = 1;
+	static final int HEADER_SIZE = 6 * 4;
+	private static final int SPAWN_SIZE = 1 + 3 * 4;
+
+	public static final byte SPAWN_COIN = 0;
+	public static final byte SPAWN_WUMPUS = 1;
+	public static final byte SPAWN_TOWER = 2;
+
+	/***
+	 * An entity to create when the level is loaded.
+	 */
+	public static class Spawn {
+		private final byte type;
+		private final int x, y;
+		private final int value;
+
+		public Spawn(byte type, int x, int y, int value) {
+			this.type = type;
+			this.x = x;
+			this.y = y;
+			this.value = value;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		/***
+		 * Type specific value, e.g. how much a coin is worth.
+		 */
+		public int getValue() {
+			return value;
+		}
+	}
+
+	private final MappedTileMap tileMap;
+	private final ArrayList<Spawn> spawns;
+
+	private LevelFile(MappedTileMap tileMap, ArrayList<Spawn> spawns) {
+		this.tileMap = tileMap;
+		this.spawns = spawns;
+	}
+
+	/***
+	 * Memory map a level file. A file that can't be written to (e.g. installed
+	 * read-only) is mapped read-only, and changes to its tiles are kept on the
+	 * heap instead.
+	 */
+	public static LevelFile open(File file) throws IOException {
+		if (!file.isFile()) {
+			throw new FileNotFoundException("No level file " + file);
+		}
+
+		// A PRIVATE mapping needs a writable channel, but nothing is ever written:
+		// setTileAt() only changes our own copy of a page
+		boolean writable = file.canWrite();
+		RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("Level file is truncated: " + file);
+			}
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Level file is too big to map: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.PRIVATE
+					: FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not a level file: " + file);
+			}
+
+			int width = buffer.getInt(8);
+			int height = buffer.getInt(12);
+			int bytesPerTile = buffer.getInt(16);
+			int numSpawns = buffer.getInt(20);
+			if (width <= 0 || height <= 0) {
+				throw new IOException("Bad level size " + width + "x" + height + " in " + file);
+			}
+			if (bytesPerTile != 1 && bytesPerTile != 2) {
+				throw new IOException("Bad tile size " + bytesPerTile + " in " + file);
+			}
+			if (numSpawns < 0) {
+				throw new IOException("Bad spawn count " + numSpawns + " in " + file);
+			}
+
+			long spawnOffset = HEADER_SIZE + (long) width * height * bytesPerTile;
+			if (spawnOffset + (long) numSpawns * SPAWN_SIZE > channel.size()) {
+				throw new IOException("Level file is truncated: " + file);
+			}
+
+			checkTileIds(buffer, width * height, bytesPerTile, file);
+
+			ArrayList<Spawn> spawns = new ArrayList<Spawn>(numSpawns);
+			int offset = (int) spawnOffset;
+			for (int i = 0; i < numSpawns; i++) {
+				spawns.add(new Spawn(buffer.get(offset), buffer.getInt(offset + 1),
+						buffer.getInt(offset + 5), buffer.getInt(offset + 9)));
+				offset += SPAWN_SIZE;
+			}
+
+			return new LevelFile(
+					new MappedTileMap(buffer, width, height, bytesPerTile, !writable),
+					spawns);
+		} finally {
+			raf.close(); // the mapping stays valid after the file is closed
+		}
+	}
+
+	// Every tile id has to be a known tile, or building the Level fails later
+	// on with an IndexOutOfBoundsException from Tile.tiles
+	private static void checkTileIds(MappedByteBuffer buffer, int numTiles,
+			int bytesPerTile, File file) throws IOException {
+		int numTileTypes = Tile.tiles.size();
+		for (int i = 0; i < numTiles; i++) {
+			int id = bytesPerTile == 1 ? buffer.get(HEADER_SIZE + i) & 0xFF
+					: buffer.getShort(HEADER_SIZE + i * 2) & 0xFFFF;
+			if (id >= numTileTypes) {
+				throw new IOException("Unknown tile id " + id + " at tile " + i
+						+ " in " + file);
+			}
+		}
+	}
+
+	/***
+	 * Write a level file. Tiles take one byte each if every id fits, otherwise
+	 * two.
+	 */
+	public static void write(File file, TileMap tiles, List<Spawn> spawns)
+			throws IOException {
+		int width = tiles.getWidth();
+		int height = tiles.getHeight();
+
+		int bytesPerTile = 1;
+		for (int y = 0; y < height && bytesPerTile == 1; y++) {
+			for (int x = 0; x < width; x++) {
+				if (tiles.getTileId(x, y) > 0xFF) {
+					bytesPerTile = 2;
+					break;
+				}
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(bytesPerTile);
+			out.writeInt(spawns.size());
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					if (bytesPerTile == 1) {
+						out.writeByte(tiles.getTileId(x, y));
+					} else {
+						out.writeShort(tiles.getTileId(x, y));
+					}
+				}
+			}
+
+			for (Spawn spawn : spawns) {
+				out.writeByte(spawn.getType());
+				out.writeInt(spawn.getX());
+				out.writeInt(spawn.getY());
+				out.writeInt(spawn.getValue());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public MappedTileMap getTileMap() {
+		return tileMap;
+	}
+
+	public List<Spawn> getSpawns() {
+		return spawns;
+	}
+
+	/***
+	 * Create this file's entities in level. Add the player first: Wumpus chase
+	 * whoever the level's player is when they are created.
+	 */
+	public void spawnInto(Level level) {
+		for (Spawn spawn : spawns) {
+			switch (spawn.getType()) {
+			case SPAWN_COIN:
+				level.addCoin(spawn.getX(), spawn.getY(), spawn.getValue());
+				break;
+			case SPAWN_WUMPUS:
+				level.addWumpus(spawn.getX(), spawn.getY());
+				break;
+			case SPAWN_TOWER:
+				level.addTower(spawn.getX(), spawn.getY());
+				break;
+			default:
+				System.err.println("Unknown spawn type " + spawn.getType());
+			}
+		}
+	}
+
+	/***
+	 * Convert a level image on the classpath into a level file. Spawns are given
+	 * as type:x:y[:value] with type coin, wumpus or tower.
+	 * 
+	 * Usage: LevelFile levelImagePath outputFile [spawn ...]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: LevelFile levelImagePath outputFile [type:x:y[:value] ...]");
+			return;
+		}
+
+		ArrayList<Spawn> spawns = new ArrayList<Spawn>();
+		for (int i = 2; i < args.length; i++) {
+			String[] parts = args[i].split(":");
+			byte type;
+			if (parts[0].equalsIgnoreCase("coin")) {
+				type = SPAWN_COIN;
+			} else if (parts[0].equalsIgnoreCase("wumpus")) {
+				type = SPAWN_WUMPUS;
+			} else if (parts[0].equalsIgnoreCase("tower")) {
+				type = SPAWN_TOWER;
+			} else {
+				throw new IllegalArgumentException("Unknown spawn type " + parts[0]);
+			}
+			int value = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
+			spawns.add(new Spawn(type, Integer.parseInt(parts[1]),
+					Integer.parseInt(parts[2]), value));
+		}
+
+		Level level = new Level(args[0]);
+		write(new File(args[1]), level.getTileMap(), spawns);
+	}
+}
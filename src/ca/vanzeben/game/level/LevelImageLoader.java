@@ -0,0 +1,156 @@
+package ca.vanzeben.game.level;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+import ca.vanzeben.game.level.tiles.TileColourIndex;
+
+/***
+ * Loads a level image and turns it into tile ids.
+ * 
+ * PNG data is a single compressed stream, so decoding it can't be split up
+ * (asking an ImageReader for a region low in the image still inflates every
+ * row above it). Once decoded though, reading colours out of the image and
+ * mapping them to tiles is split into horizontal stripes that are converted on
+ * all cores at once. The time spent in each phase is recorded.
+ * 
+ * Pixels whose colour isn't a tile are left as tile 0, the same as
+ * Level.loadTiles() used to do.
+ */
+public class LevelImageLoader {
+	private static final int MIN_ROWS_PER_STRIPE = 64;
+
+	private final ForkJoinPool pool;
+
+	private BufferedImage image;
+	private short[] tileIds;
+	private long decodeNanos;
+	private long mapNanos;
+
+	public LevelImageLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public LevelImageLoader(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/***
+	 * Decode the level image at resourcePath (on the classpath) and map it to
+	 * tile ids with colourIndex.
+	 */
+	public void load(String resourcePath, TileColourIndex colourIndex)
+			throws IOException {
+		URL url = Level.class.getResource(resourcePath);
+		if (url == null) {
+			throw new IOException("Level image not found: " + resourcePath);
+		}
+
+		long start = System.nanoTime();
+		image = ImageIO.read(url);
+		if (image == null) {
+			throw new IOException("Not a readable image: " + resourcePath);
+		}
+		long decoded = System.nanoTime();
+		decodeNanos = decoded - start;
+
+		mapTiles(colourIndex);
+		mapNanos = System.nanoTime() - decoded;
+	}
+
+	private void mapTiles(TileColourIndex colourIndex) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		tileIds = new short[width * height];
+
+		int numStripes = Math.max(1, Math.min(pool.getParallelism() * 2,
+				height / MIN_ROWS_PER_STRIPE));
+		int rowsPerStripe = (height + numStripes - 1) / numStripes;
+
+		ArrayList<StripeTask> stripes = new ArrayList<StripeTask>();
+		for (int firstRow = 0; firstRow < height; firstRow += rowsPerStripe) {
+			stripes.add(new StripeTask(colourIndex, firstRow,
+					Math.min(height, firstRow + rowsPerStripe)));
+		}
+
+		if (stripes.size() == 1) {
+			stripes.get(0).compute();
+		} else {
+			pool.invoke(new StripesTask(stripes));
+		}
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/***
+	 * Tile id of every pixel of the image, row by row.
+	 */
+	public short[] getTileIds() {
+		return tileIds;
+	}
+
+	/***
+	 * Time taken to decode the image file, in nanoseconds.
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	/***
+	 * Time taken to turn the decoded image into tile ids, in nanoseconds.
+	 */
+	public long getMapNanos() {
+		return mapNanos;
+	}
+
+	private class StripeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final TileColourIndex colourIndex;
+		private final int firstRow, endRow;
+
+		StripeTask(TileColourIndex colourIndex, int firstRow, int endRow) {
+			this.colourIndex = colourIndex;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+		}
+
+		@Override
+		protected void compute() {
+			int width = image.getWidth();
+			int[] colours = image.getRGB(0, firstRow, width, endRow - firstRow, null,
+					0, width);
+			int offset = firstRow * width;
+
+			for (int i = 0; i < colours.length; i++) {
+				int id = colourIndex.getId(colours[i]);
+				if (id != TileColourIndex.NO_TILE) {
+					tileIds[offset + i] = (short) id;
+				}
+			}
+		}
+	}
+
+	private static class StripesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ArrayList<StripeTask> stripes;
+
+		StripesTask(ArrayList<StripeTask> stripes) {
+			this.stripes = stripes;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(stripes);
+		}
+	}
+}
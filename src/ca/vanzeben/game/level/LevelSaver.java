@@ -0,0 +1,605 @@
+package ca.vanzeben.game.level;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.vanzeben.game.entities.Coin;
+import ca.vanzeben.game.entities.Entity;
+import ca.vanzeben.game.entities.EntityStore;
+import ca.vanzeben.game.entities.Player;
+import ca.vanzeben.game.entities.Tower;
+import ca.vanzeben.game.entities.Wumpus;
+
+/***
+ * Saves a level, its entities and the player's position and money to a file,
+ * and restores them again.
+ *
+ * saveSnapshot() writes everything. saveDelta() appends only what changed
+ * since the last save: chunks with edited tiles and entities that moved,
+ * appeared or disappeared. Restoring reads the snapshot and replays the deltas
+ * after it.
+ *
+ * Saving is split in two so the game doesn't stall. The game thread copies the
+ * state it needs (cheap: a few ints per entity plus the changed chunks), then a
+ * background thread works out what changed and writes the file.
+ *
+ * Entities in the level's EntityStore all move every tick, so their positions
+ * are written in full every time, but they don't count towards the deltas
+ * outgrowing the snapshot. Fireballs are not saved, they only live a few
+ * seconds. A level whose tiles come from a PagedTileMap keeps its tiles in its
+ * own region files, so only its entities are saved here.
+ *
+ * NOTE: saveSnapshot(), saveDelta() and restore() must be called from the
+ * game thread, between ticks.
+ */
+public class LevelSaver {
+	private static final int SNAPSHOT_MAGIC = 0x53415631; // "SAV1"
+	private static final int DELTA_MAGIC = 0x44454C54; // "DELT"
+	private static final int VERSION = 1;
+
+	// Start the file over with a fresh snapshot after this many deltas, so it
+	// (and the time to restore it) doesn't keep growing
+	public static final int MAX_DELTAS = 20;
+
+	// Entity types, shared with level files
+	private static final byte TYPE_COIN = LevelFile.SPAWN_COIN;
+	private static final byte TYPE_WUMPUS = LevelFile.SPAWN_WUMPUS;
+	private static final byte TYPE_TOWER = LevelFile.SPAWN_TOWER;
+
+	private final Level level;
+	private final File file;
+	private final ExecutorService io;
+	private final AtomicInteger savesInProgress = new AtomicInteger();
+
+	private boolean snapshotTaken = false; // game thread only
+	private int deltasSinceSnapshot = 0; // game thread only
+	private volatile boolean needSnapshot = false; // set when a write fails
+	private volatile IOException lastError;
+	private long lastCaptureNanos;
+
+	// Size of the last snapshot written and of the deltas appended after it.
+	// Set by the io thread.
+	private volatile long snapshotBytes, deltaBytes;
+
+	// Last state written to the file, used to work out deltas. Only touched by
+	// the io thread.
+	private State lastWritten;
+	private HashMap<Integer, Integer> lastWrittenIndex = new HashMap<Integer, Integer>();
+
+	/***
+	 * A block of tiles, row by row.
+	 */
+	private static class TileBlock {
+		int firstTileX, firstTileY, tilesWide, tilesHigh;
+		short[] tileIds;
+	}
+
+	/***
+	 * Everything that gets saved, copied out of the level on the game thread.
+	 */
+	private static class State {
+		int playerX, playerY, money;
+		ArrayList<TileBlock> tiles = new ArrayList<TileBlock>();
+
+		int numEntities;
+		int[] ids, types, xs, ys, values;
+
+		int numStored;
+		int[] storedX, storedY;
+	}
+
+	public LevelSaver(Level level, File file) {
+		this.level = level;
+		this.file = file;
+
+		io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Level_save");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/***
+	 * Save the whole level. The file is replaced once the new snapshot has been
+	 * completely written, so a crash part way through leaves the old save.
+	 */
+	public void saveSnapshot() {
+		long start = System.nanoTime();
+		final State state = capture(true);
+		level.takeChangedChunks(); // all tiles are in the snapshot
+		snapshotTaken = true;
+		needSnapshot = false;
+		deltasSinceSnapshot = 0;
+		lastCaptureNanos = System.nanoTime() - start;
+
+		submit(new Runnable() {
+			public void run() {
+				File temp = new File(file.getPath() + ".tmp");
+				try {
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+					try {
+						out.writeInt(SNAPSHOT_MAGIC);
+						out.writeInt(VERSION);
+						out.writeInt(level.getLevelImageWidth());
+						out.writeInt(level.getLevelImageHeight());
+						writeRecord(out, state, allIndexes(state), state.numEntities, new int[0], 0);
+					} finally {
+						out.close();
+					}
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					snapshotBytes = file.length() - storedBytes(state);
+					deltaBytes = 0;
+					remember(state);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		});
+	}
+
+	/***
+	 * Append the changes since the last save. Takes a full snapshot instead if
+	 * there is none yet, or once there have been MAX_DELTAS deltas or they add
+	 * up to more than the snapshot.
+	 *
+	 * @return false if the previous save hasn't finished yet, in which case
+	 *         nothing is saved. The changes are kept for the next save.
+	 */
+	public boolean saveDelta() {
+		if (savesInProgress.get() > 0) {
+			return false;
+		}
+		if (!snapshotTaken || needSnapshot || deltasSinceSnapshot >= MAX_DELTAS
+				|| deltaBytes > snapshotBytes) {
+			saveSnapshot();
+			return true;
+		}
+		deltasSinceSnapshot++;
+
+		long start = System.nanoTime();
+		final State state = capture(false);
+		lastCaptureNanos = System.nanoTime() - start;
+
+		submit(new Runnable() {
+			public void run() {
+				// Work out which entities changed or went away since the last write
+				int[] changed = new int[state.numEntities];
+				int numChanged = 0;
+				HashSet<Integer> alive = new HashSet<Integer>();
+				for (int i = 0; i < state.numEntities; i++) {
+					alive.add(state.ids[i]);
+					Integer old = lastWrittenIndex.get(state.ids[i]);
+					if (old == null || lastWritten.xs[old] != state.xs[i] || lastWritten.ys[old] != state.ys[i]
+							|| lastWritten.values[old] != state.values[i]) {
+						changed[numChanged++] = i;
+					}
+				}
+
+				int[] removed = new int[lastWritten.numEntities];
+				int numRemoved = 0;
+				for (int i = 0; i < lastWritten.numEntities; i++) {
+					if (!alive.contains(lastWritten.ids[i])) {
+						removed[numRemoved++] = lastWritten.ids[i];
+					}
+				}
+
+				long startBytes = file.length();
+				try {
+					DataOutputStream out = new DataOutputStream(
+							new BufferedOutputStream(new FileOutputStream(file, true)));
+					try {
+						out.writeInt(DELTA_MAGIC);
+						writeRecord(out, state, changed, numChanged, removed, numRemoved);
+						out.writeInt(numChanged); // lets restore() spot a torn write
+					} finally {
+						out.close();
+					}
+					deltaBytes += file.length() - startBytes - storedBytes(state);
+					remember(state);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		});
+		return true;
+	}
+
+	private void submit(final Runnable save) {
+		savesInProgress.incrementAndGet();
+		io.execute(new Runnable() {
+			public void run() {
+				try {
+					save.run();
+				} finally {
+					savesInProgress.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	private void fail(IOException e) {
+		lastError = e;
+		needSnapshot = true; // a delta on top of a failed write would be wrong
+	}
+
+	// Bytes taken by the stored entities in a record. Left out when comparing
+	// the deltas with the snapshot: every delta rewrites all of them, so with
+	// enough of them nearly every save would become a snapshot.
+	private static long storedBytes(State state) {
+		return 4 + 8L * state.numStored;
+	}
+
+	private static int[] allIndexes(State state) {
+		int[] all = new int[state.numEntities];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = i;
+		}
+		return all;
+	}
+
+	private void remember(State state) {
+		lastWritten = state;
+		lastWrittenIndex.clear();
+		for (int i = 0; i < state.numEntities; i++) {
+			lastWrittenIndex.put(state.ids[i], i);
+		}
+	}
+
+	// Copy what needs saving out of the level. Runs on the game thread.
+	private State capture(boolean allTiles) {
+		State state = new State();
+		Player player = level.getPlayer();
+		if (player != null) {
+			state.playerX = player.getX();
+			state.playerY = player.getY();
+			state.money = player.getMoney();
+		}
+
+		TileMap tileMap = level.getTileMap();
+		if (tileMap instanceof PagedTileMap) {
+			((PagedTileMap) tileMap).flush();
+			level.takeChangedChunks();
+		} else if (allTiles) {
+			state.tiles.add(copyAllTiles(tileMap));
+		} else {
+			BitSet changed = level.takeChangedChunks();
+			int chunksWide = level.getNumChunksWide();
+			for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+				int firstTileX = (i % chunksWide) * Level.CHUNK_SIZE;
+				int firstTileY = (i / chunksWide) * Level.CHUNK_SIZE;
+				state.tiles.add(copyTiles(tileMap, firstTileX, firstTileY,
+						Math.min(Level.CHUNK_SIZE, tileMap.getWidth() - firstTileX),
+						Math.min(Level.CHUNK_SIZE, tileMap.getHeight() - firstTileY)));
+			}
+		}
+
+		int count = level.getNumEntities();
+		state.ids = new int[count];
+		state.types = new int[count];
+		state.xs = new int[count];
+		state.ys = new int[count];
+		state.values = new int[count];
+		for (int i = 0; i < count; i++) {
+			Entity e = level.getEntity(i);
+			int n = state.numEntities;
+			if (e.isDead()) {
+				continue;
+			} else if (e instanceof Coin) {
+				state.types[n] = TYPE_COIN;
+				state.values[n] = ((Coin) e).getValue();
+			} else if (e instanceof Wumpus) {
+				state.types[n] = TYPE_WUMPUS;
+			} else if (e instanceof Tower) {
+				state.types[n] = TYPE_TOWER;
+			} else {
+				continue; // fireballs
+			}
+			state.ids[n] = e.getId();
+			state.xs[n] = e.getX();
+			state.ys[n] = e.getY();
+			state.numEntities++;
+		}
+
+		EntityStore store = level.getEntityStore();
+		state.storedX = new int[store.size()];
+		state.storedY = new int[store.size()];
+		for (int i = 0; i < store.size(); i++) {
+			if (!store.isDead(i)) {
+				state.storedX[state.numStored] = store.get(i).getX();
+				state.storedY[state.numStored] = store.get(i).getY();
+				state.numStored++;
+			}
+		}
+		return state;
+	}
+
+	// Copied in bulk where the map allows it, since this runs on the game thread
+	private static TileBlock copyAllTiles(TileMap tileMap) {
+		short[] tileIds;
+		if (tileMap instanceof ArrayTileMap) {
+			tileIds = ((ArrayTileMap) tileMap).copyTileIds();
+		} else if (tileMap instanceof MappedTileMap) {
+			tileIds = ((MappedTileMap) tileMap).copyTileIds();
+		} else {
+			return copyTiles(tileMap, 0, 0, tileMap.getWidth(), tileMap.getHeight());
+		}
+
+		TileBlock block = new TileBlock();
+		block.tilesWide = tileMap.getWidth();
+		block.tilesHigh = tileMap.getHeight();
+		block.tileIds = tileIds;
+		return block;
+	}
+
+	private static TileBlock copyTiles(TileMap tileMap, int firstTileX, int firstTileY, int tilesWide, int tilesHigh) {
+		TileBlock block = new TileBlock();
+		block.firstTileX = firstTileX;
+		block.firstTileY = firstTileY;
+		block.tilesWide = tilesWide;
+		block.tilesHigh = tilesHigh;
+		block.tileIds = new short[tilesWide * tilesHigh];
+		for (int y = 0; y < tilesHigh; y++) {
+			for (int x = 0; x < tilesWide; x++) {
+				block.tileIds[y * tilesWide + x] = (short) tileMap.getTileId(firstTileX + x, firstTileY + y);
+			}
+		}
+		return block;
+	}
+
+	// Player, tile blocks, removed entity ids, the entities at the given indexes
+	// and stored entities
+	private static void writeRecord(DataOutputStream out, State state, int[] entities, int numEntities,
+			int[] removed, int numRemoved) throws IOException {
+		out.writeInt(state.playerX);
+		out.writeInt(state.playerY);
+		out.writeInt(state.money);
+
+		out.writeInt(state.tiles.size());
+		for (TileBlock block : state.tiles) {
+			out.writeInt(block.firstTileX);
+			out.writeInt(block.firstTileY);
+			out.writeInt(block.tilesWide);
+			out.writeInt(block.tilesHigh);
+			for (short id : block.tileIds) {
+				out.writeShort(id);
+			}
+		}
+
+		out.writeInt(numRemoved);
+		for (int i = 0; i < numRemoved; i++) {
+			out.writeInt(removed[i]);
+		}
+
+		out.writeInt(numEntities);
+		for (int i = 0; i < numEntities; i++) {
+			int index = entities[i];
+			out.writeInt(state.ids[index]);
+			out.writeByte(state.types[index]);
+			out.writeInt(state.xs[index]);
+			out.writeInt(state.ys[index]);
+			out.writeInt(state.values[index]);
+		}
+
+		out.writeInt(state.numStored);
+		for (int i = 0; i < state.numStored; i++) {
+			out.writeInt(state.storedX[i]);
+			out.writeInt(state.storedY[i]);
+		}
+	}
+
+	/***
+	 * A record read back from the file. Entities are kept by id.
+	 */
+	private static class Record {
+		int playerX, playerY, money;
+		ArrayList<TileBlock> tiles = new ArrayList<TileBlock>();
+		int[] removed;
+		ArrayList<int[]> entities = new ArrayList<int[]>(); // id, type, x, y, value
+		int[] storedX, storedY;
+	}
+
+	private static Record readRecord(DataInputStream in) throws IOException {
+		Record record = new Record();
+		record.playerX = in.readInt();
+		record.playerY = in.readInt();
+		record.money = in.readInt();
+
+		int numBlocks = in.readInt();
+		for (int i = 0; i < numBlocks; i++) {
+			TileBlock block = new TileBlock();
+			block.firstTileX = in.readInt();
+			block.firstTileY = in.readInt();
+			block.tilesWide = in.readInt();
+			block.tilesHigh = in.readInt();
+			block.tileIds = new short[block.tilesWide * block.tilesHigh];
+			for (int t = 0; t < block.tileIds.length; t++) {
+				block.tileIds[t] = in.readShort();
+			}
+			record.tiles.add(block);
+		}
+
+		record.removed = new int[in.readInt()];
+		for (int i = 0; i < record.removed.length; i++) {
+			record.removed[i] = in.readInt();
+		}
+
+		int numEntities = in.readInt();
+		for (int i = 0; i < numEntities; i++) {
+			record.entities.add(new int[] { in.readInt(), in.readByte(), in.readInt(), in.readInt(), in.readInt() });
+		}
+
+		int numStored = in.readInt();
+		record.storedX = new int[numStored];
+		record.storedY = new int[numStored];
+		for (int i = 0; i < numStored; i++) {
+			record.storedX[i] = in.readInt();
+			record.storedY[i] = in.readInt();
+		}
+		return record;
+	}
+
+	/***
+	 * Put the level back the way it was at the last save in the file. The
+	 * level's player must already be added. Waits for any saves still being
+	 * written.
+	 *
+	 * @return number of deltas applied after the snapshot
+	 */
+	public int restore() throws IOException {
+		waitForSaves();
+
+		ArrayList<Record> records = new ArrayList<Record>();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a save file: " + file);
+			}
+			if (in.readInt() != level.getLevelImageWidth() || in.readInt() != level.getLevelImageHeight()) {
+				throw new IOException("Save file is for a different level: " + file);
+			}
+			records.add(readRecord(in));
+
+			// A delta cut short by a crash is ignored, along with anything after it
+			while (true) {
+				try {
+					if (in.readInt() != DELTA_MAGIC) {
+						break;
+					}
+					Record delta = readRecord(in);
+					if (in.readInt() != delta.entities.size()) {
+						break;
+					}
+					records.add(delta);
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		LinkedHashMap<Integer, int[]> entities = new LinkedHashMap<Integer, int[]>();
+		for (Record record : records) {
+			for (TileBlock block : record.tiles) {
+				level.restoreTiles(block.firstTileX, block.firstTileY, block.tilesWide, block.tilesHigh,
+						block.tileIds);
+			}
+			for (int id : record.removed) {
+				entities.remove(id);
+			}
+			for (int[] entity : record.entities) {
+				entities.put(entity[0], entity);
+			}
+		}
+
+		Record last = records.get(records.size() - 1);
+		Player player = level.getPlayer();
+		if (player != null) {
+			player.setX(last.playerX);
+			player.setY(last.playerY);
+			player.setMoney(last.money);
+			player.savePreviousPosition();
+		}
+
+		level.clearEntities();
+		for (int[] entity : entities.values()) {
+			Entity e;
+			if (entity[1] == TYPE_COIN) {
+				e = new Coin(entity[2], entity[3], entity[4], level);
+			} else if (entity[1] == TYPE_WUMPUS) {
+				e = new Wumpus(entity[2], entity[3], level, 5, player);
+			} else if (entity[1] == TYPE_TOWER) {
+				e = new Tower(entity[2], entity[3], level);
+			} else {
+				continue;
+			}
+			e.setId(entity[0]);
+			level.addEntity(e);
+		}
+		for (int i = 0; i < last.storedX.length; i++) {
+			level.addStoredWumpus(last.storedX[i], last.storedY[i]);
+		}
+
+		// Start the next save from a clean snapshot
+		level.takeChangedChunks();
+		snapshotTaken = false;
+		return records.size() - 1;
+	}
+
+	/***
+	 * Block until every save that has been started is on disk.
+	 */
+	public void waitForSaves() {
+		while (savesInProgress.get() > 0) {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/***
+	 * Finish writing saves and stop the background thread.
+	 */
+	public void close() {
+		io.shutdown();
+		try {
+			io.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/***
+	 * Number of deltas appended since the last snapshot.
+	 */
+	public int getDeltasSinceSnapshot() {
+		return deltasSinceSnapshot;
+	}
+
+	public boolean isSaving() {
+		return savesInProgress.get() > 0;
+	}
+
+	/***
+	 * Time the game thread spent copying state for the last save, in
+	 * nanoseconds. The rest of the work happens in the background.
+	 */
+	public long getLastCaptureNanos() {
+		return lastCaptureNanos;
+	}
+
+	/***
+	 * Most recent error from writing a save, or null.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,97 @@
+package ca.vanzeben.game.level;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * TileMap that reads tiles straight out of a memory mapped LevelFile. Changes
+ * are made to a private copy of the mapped page and are never written back to
+ * the file. If the file could only be mapped read-only, changed tiles are kept
+ * in a map on the heap instead.
+ */
+public class MappedTileMap implements TileMap {
+	private final MappedByteBuffer buffer;
+	private final int width, height;
+	private final int bytesPerTile;
+
+	// Changed tiles by index, for read-only mappings. null for writable ones.
+	private final HashMap<Integer, Integer> edits;
+
+	MappedTileMap(MappedByteBuffer buffer, int width, int height,
+			int bytesPerTile, boolean readOnly) {
+		this.buffer = buffer;
+		this.width = width;
+		this.height = height;
+		this.bytesPerTile = bytesPerTile;
+		this.edits = readOnly ? new HashMap<Integer, Integer>() : null;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTileId(int x, int y) {
+		int index = y * width + x;
+		if (edits != null && !edits.isEmpty()) {
+			Integer edited = edits.get(index);
+			if (edited != null) {
+				return edited;
+			}
+		}
+		if (bytesPerTile == 1) {
+			return buffer.get(LevelFile.HEADER_SIZE + index) & 0xFF;
+		}
+		return buffer.getShort(LevelFile.HEADER_SIZE + index * 2) & 0xFFFF;
+	}
+
+	/***
+	 * @throws IllegalArgumentException
+	 *           if id doesn't fit in the file's bytes per tile
+	 */
+	public void setTileId(int x, int y, int id) {
+		if (id < 0 || id >= 1 << (8 * bytesPerTile)) {
+			throw new IllegalArgumentException("Tile id " + id + " doesn't fit in "
+					+ bytesPerTile + " byte(s) per tile");
+		}
+
+		int index = y * width + x;
+		if (edits != null) {
+			edits.put(index, id);
+		} else if (bytesPerTile == 1) {
+			buffer.put(LevelFile.HEADER_SIZE + index, (byte) id);
+		} else {
+			buffer.putShort(LevelFile.HEADER_SIZE + index * 2, (short) id);
+		}
+	}
+
+	/***
+	 * Copy of every tile id, row by row, read from the file in one go.
+	 */
+	public short[] copyTileIds() {
+		short[] tileIds = new short[width * height];
+		ByteBuffer tiles = buffer.duplicate().order(buffer.order());
+		tiles.position(LevelFile.HEADER_SIZE);
+		if (bytesPerTile == 1) {
+			byte[] bytes = new byte[tileIds.length];
+			tiles.get(bytes);
+			for (int i = 0; i < bytes.length; i++) {
+				tileIds[i] = (short) (bytes[i] & 0xFF);
+			}
+		} else {
+			tiles.asShortBuffer().get(tileIds);
+		}
+
+		if (edits != null) {
+			for (Map.Entry<Integer, Integer> edit : edits.entrySet()) {
+				tileIds[edit.getKey()] = (short) (int) edit.getValue();
+			}
+		}
+		return tileIds;
+	}
+}
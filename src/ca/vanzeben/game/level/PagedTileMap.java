@@ -0,0 +1,520 @@
+package ca.vanzeben.game.level;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/***
+ * TileMap for worlds too big to keep in memory. The world is cut into square
+ * regions of regionSize x regionSize tiles, each stored in its own file in a
+ * directory (see write()). Only regions near the focus point (normally the
+ * player) are kept in memory.
+ *
+ * Regions are read and written on a background thread, so the game thread
+ * never waits for the disk. updateFocus() should be called once per tick: it
+ * asks for the regions around the focus to be loaded, plus a few regions ahead
+ * in the direction of movement, and unloads regions that are far away (saving
+ * them first if they were changed). Until a region has arrived its tiles read
+ * as missingTileId (VOID by default), and changes to it are held back and
+ * applied once it arrives. A region whose file can't be read keeps reading as
+ * missing (see getLastError()) and is asked for again later; it is never
+ * written back.
+ *
+ * Everything except the actual disk access happens on the game thread.
+ * getTileId() may also be called from other threads (e.g. the parallel entity
+ * ticker) while the game thread is not calling updateFocus().
+ */
+public class PagedTileMap implements TileMap {
+	public static final int DEFAULT_REGION_SIZE = 64;
+
+	private static final int MAGIC = 0x50414745; // "PAGE"
+	private static final int VERSION = 1;
+	private static final String HEADER_FILE = "header.bin";
+
+	private static final byte UNLOADED = 0;
+	private static final byte LOADING = 1;
+	private static final byte RESIDENT = 2;
+
+	/***
+	 * Told (on the game thread) whenever a region has been loaded, so anything
+	 * drawn from the placeholder tiles can be redone, and whenever one has been
+	 * unloaded and reads as placeholder tiles again.
+	 */
+	public interface RegionListener {
+		void regionLoaded(int firstTileX, int firstTileY, int tilesWide,
+				int tilesHigh);
+
+		void regionUnloaded(int firstTileX, int firstTileY, int tilesWide,
+				int tilesHigh);
+	}
+
+	private final File directory;
+	private final int width, height;
+	private final int regionSize;
+	private final int regionsWide, regionsHigh;
+
+	// Tiles of each resident region, null if not in memory
+	private final AtomicReferenceArray<short[]> regions;
+
+	// Only used on the game thread
+	private final byte[] regionState;
+	private final boolean[] regionChanged;
+	private int[] activeRegions = new int[64]; // regions LOADING or RESIDENT
+	private int numActiveRegions = 0;
+	private final HashMap<Integer, ArrayList<int[]>> pendingEdits = new HashMap<Integer, ArrayList<int[]>>();
+
+	private final ConcurrentLinkedQueue<LoadedRegion> loadedRegions = new ConcurrentLinkedQueue<LoadedRegion>();
+	private final ExecutorService io;
+	private volatile IOException lastError;
+
+	private int residentRadius = 2; // regions around the focus to keep loaded
+	private int prefetchDistance = 2; // extra regions to load ahead of movement
+	private int missingTileId = 0;
+	private RegionListener listener;
+
+	private static class LoadedRegion {
+		final int index;
+		final short[] tileIds; // null if it couldn't be read
+
+		LoadedRegion(int index, short[] tileIds) {
+			this.index = index;
+			this.tileIds = tileIds;
+		}
+	}
+
+	/***
+	 * Open a paged world previously written with write().
+	 */
+	public PagedTileMap(File directory) throws IOException {
+		this.directory = directory;
+
+		DataInputStream in = new DataInputStream(
+				new FileInputStream(new File(directory, HEADER_FILE)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a paged level: " + directory);
+			}
+			this.width = in.readInt();
+			this.height = in.readInt();
+			this.regionSize = in.readInt();
+		} finally {
+			in.close();
+		}
+
+		this.regionsWide = (width + regionSize - 1) / regionSize;
+		this.regionsHigh = (height + regionSize - 1) / regionSize;
+		this.regions = new AtomicReferenceArray<short[]>(regionsWide * regionsHigh);
+		this.regionState = new byte[regionsWide * regionsHigh];
+		this.regionChanged = new boolean[regionsWide * regionsHigh];
+
+		this.io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Level_io");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/***
+	 * Split source into regions and write them to directory, creating it if
+	 * needed.
+	 */
+	public static void write(File directory, TileMap source, int regionSize)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create " + directory);
+		}
+
+		DataOutputStream header = new DataOutputStream(
+				new FileOutputStream(new File(directory, HEADER_FILE)));
+		try {
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(source.getWidth());
+			header.writeInt(source.getHeight());
+			header.writeInt(regionSize);
+		} finally {
+			header.close();
+		}
+
+		short[] tileIds = new short[regionSize * regionSize];
+		for (int ry = 0; ry * regionSize < source.getHeight(); ry++) {
+			for (int rx = 0; rx * regionSize < source.getWidth(); rx++) {
+				for (int y = 0; y < regionSize; y++) {
+					for (int x = 0; x < regionSize; x++) {
+						int tileX = rx * regionSize + x;
+						int tileY = ry * regionSize + y;
+						tileIds[y * regionSize + x] = tileX < source.getWidth()
+								&& tileY < source.getHeight()
+										? (short) source.getTileId(tileX, tileY) : 0;
+					}
+				}
+				writeRegionFile(regionFile(directory, rx, ry), tileIds);
+			}
+		}
+	}
+
+	private static File regionFile(File directory, int rx, int ry) {
+		return new File(directory, "region_" + rx + "_" + ry + ".bin");
+	}
+
+	private static void writeRegionFile(File file, short[] tileIds)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(tileIds.length * 2);
+		buffer.asShortBuffer().put(tileIds);
+		Files.write(file.toPath(), buffer.array());
+	}
+
+	private short[] readRegionFile(int index) throws IOException {
+		File file = regionFile(directory, index % regionsWide, index / regionsWide);
+		short[] tileIds = new short[regionSize * regionSize];
+		if (file.exists()) {
+			if (file.length() != tileIds.length * 2) {
+				throw new IOException("Region file is " + file.length()
+						+ " bytes, expected " + tileIds.length * 2 + ": " + file);
+			}
+			ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asShortBuffer()
+					.get(tileIds);
+		}
+		return tileIds;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTileId(int x, int y) {
+		short[] tileIds = regions
+				.get((y / regionSize) * regionsWide + x / regionSize);
+		if (tileIds == null) {
+			return missingTileId;
+		}
+		return tileIds[(y % regionSize) * regionSize + x % regionSize];
+	}
+
+	public void setTileId(int x, int y, int id) {
+		int index = (y / regionSize) * regionsWide + x / regionSize;
+
+		if (regionState[index] == RESIDENT) {
+			regions.get(index)[(y % regionSize) * regionSize + x % regionSize] = (short) id;
+			regionChanged[index] = true;
+			return;
+		}
+
+		// Hold on to the change until the region has been loaded
+		ArrayList<int[]> edits = pendingEdits.get(index);
+		if (edits == null) {
+			edits = new ArrayList<int[]>();
+			pendingEdits.put(index, edits);
+		}
+		edits.add(new int[] { x, y, id });
+		requestRegion(index % regionsWide, index / regionsWide);
+	}
+
+	/***
+	 * Keep the regions around tile (tileX, tileY) loaded and unload distant ones.
+	 * (dirX, dirY) is the direction of movement (each -1, 0 or 1); regions ahead
+	 * in that direction are loaded early. Call once per tick on the game thread.
+	 */
+	public void updateFocus(int tileX, int tileY, int dirX, int dirY) {
+		receiveLoadedRegions();
+
+		int centerX = clamp(tileX / regionSize, regionsWide);
+		int centerY = clamp(tileY / regionSize, regionsHigh);
+
+		for (int ry = centerY - residentRadius; ry <= centerY + residentRadius; ry++) {
+			for (int rx = centerX - residentRadius; rx <= centerX + residentRadius; rx++) {
+				requestRegion(rx, ry);
+			}
+		}
+
+		// Prefetch the rows/columns of regions we are heading towards
+		for (int step = 1; step <= prefetchDistance; step++) {
+			int distance = residentRadius + step;
+			for (int offset = -residentRadius; offset <= residentRadius; offset++) {
+				if (dirX != 0) {
+					requestRegion(centerX + dirX * distance, centerY + offset);
+				}
+				if (dirY != 0) {
+					requestRegion(centerX + offset, centerY + dirY * distance);
+				}
+			}
+			if (dirX != 0 && dirY != 0) {
+				requestRegion(centerX + dirX * distance, centerY + dirY * distance);
+			}
+		}
+
+		unloadRegionsOutside(centerX, centerY, residentRadius + prefetchDistance + 1);
+	}
+
+	/***
+	 * Ask for the regions covering an area of tiles (e.g. what's on screen) to
+	 * be loaded. Doesn't wait for them.
+	 */
+	public void requestArea(int firstTileX, int firstTileY, int lastTileX,
+			int lastTileY) {
+		int firstRegionX = clamp(firstTileX / regionSize, regionsWide);
+		int firstRegionY = clamp(firstTileY / regionSize, regionsHigh);
+		int lastRegionX = clamp(lastTileX / regionSize, regionsWide);
+		int lastRegionY = clamp(lastTileY / regionSize, regionsHigh);
+
+		for (int ry = firstRegionY; ry <= lastRegionY; ry++) {
+			for (int rx = firstRegionX; rx <= lastRegionX; rx++) {
+				requestRegion(rx, ry);
+			}
+		}
+	}
+
+	private static int clamp(int value, int limit) {
+		return Math.max(0, Math.min(limit - 1, value));
+	}
+
+	private void requestRegion(int rx, int ry) {
+		if (rx < 0 || rx >= regionsWide || ry < 0 || ry >= regionsHigh) {
+			return;
+		}
+
+		final int index = ry * regionsWide + rx;
+		if (regionState[index] != UNLOADED) {
+			return;
+		}
+
+		regionState[index] = LOADING;
+		addActiveRegion(index);
+
+		io.execute(new Runnable() {
+			public void run() {
+				short[] tileIds = null;
+				try {
+					tileIds = readRegionFile(index);
+				} catch (IOException e) {
+					lastError = e;
+				} catch (RuntimeException e) {
+					lastError = new IOException("Can't read region " + index, e);
+				}
+				loadedRegions.add(new LoadedRegion(index, tileIds));
+			}
+		});
+	}
+
+	// Make regions that have finished loading visible. Game thread only.
+	private void receiveLoadedRegions() {
+		LoadedRegion loaded;
+		while ((loaded = loadedRegions.poll()) != null) {
+			int index = loaded.index;
+			if (regionState[index] != LOADING) {
+				continue; // unloaded again before it arrived, or loaded twice
+			}
+
+			if (loaded.tileIds == null) {
+				// Keep reading it as missing and try again next time it's asked for.
+				// It never became resident, so nothing can write it back over the
+				// file, and its held back changes wait for a load that works.
+				regionState[index] = UNLOADED;
+				removeActiveRegion(index);
+				continue;
+			}
+
+			ArrayList<int[]> edits = pendingEdits.remove(index);
+			if (edits != null) {
+				for (int[] edit : edits) {
+					loaded.tileIds[(edit[1] % regionSize) * regionSize
+							+ edit[0] % regionSize] = (short) edit[2];
+				}
+				regionChanged[index] = true;
+			}
+
+			regions.set(index, loaded.tileIds);
+			regionState[index] = RESIDENT;
+
+			if (listener != null) {
+				int firstTileX = (index % regionsWide) * regionSize;
+				int firstTileY = (index / regionsWide) * regionSize;
+				listener.regionLoaded(firstTileX, firstTileY,
+						Math.min(regionSize, width - firstTileX),
+						Math.min(regionSize, height - firstTileY));
+			}
+		}
+	}
+
+	private void addActiveRegion(int index) {
+		if (numActiveRegions == activeRegions.length) {
+			activeRegions = Arrays.copyOf(activeRegions, numActiveRegions * 2);
+		}
+		activeRegions[numActiveRegions++] = index;
+	}
+
+	private void removeActiveRegion(int index) {
+		for (int i = 0; i < numActiveRegions; i++) {
+			if (activeRegions[i] == index) {
+				activeRegions[i] = activeRegions[--numActiveRegions];
+				return;
+			}
+		}
+	}
+
+	private void unloadRegionsOutside(int centerX, int centerY, int radius) {
+		for (int i = numActiveRegions - 1; i >= 0; i--) {
+			int index = activeRegions[i];
+			int rx = index % regionsWide;
+			int ry = index / regionsWide;
+
+			if (Math.abs(rx - centerX) > radius || Math.abs(ry - centerY) > radius) {
+				unloadRegion(index);
+				activeRegions[i] = activeRegions[--numActiveRegions];
+			}
+		}
+	}
+
+	private void unloadRegion(final int index) {
+		final short[] tileIds = regions.get(index);
+		regions.set(index, null);
+
+		if (regionState[index] == RESIDENT && regionChanged[index]) {
+			// The same single thread does loads, so this write finishes before any
+			// later reload of the region starts
+			io.execute(new Runnable() {
+				public void run() {
+					try {
+						writeRegionFile(
+								regionFile(directory, index % regionsWide, index / regionsWide),
+								tileIds);
+					} catch (IOException e) {
+						lastError = e;
+					}
+				}
+			});
+		}
+
+		regionChanged[index] = false;
+		regionState[index] = UNLOADED;
+
+		if (listener != null) {
+			int firstTileX = (index % regionsWide) * regionSize;
+			int firstTileY = (index / regionsWide) * regionSize;
+			listener.regionUnloaded(firstTileX, firstTileY,
+					Math.min(regionSize, width - firstTileX),
+					Math.min(regionSize, height - firstTileY));
+		}
+	}
+
+	/***
+	 * Save every changed region that is in memory. Doesn't wait for the writes.
+	 */
+	public void flush() {
+		for (int i = 0; i < numActiveRegions; i++) {
+			final int index = activeRegions[i];
+			if (regionState[index] == RESIDENT && regionChanged[index]) {
+				final short[] tileIds = regions.get(index).clone();
+				regionChanged[index] = false;
+
+				io.execute(new Runnable() {
+					public void run() {
+						try {
+							writeRegionFile(regionFile(directory, index % regionsWide,
+									index / regionsWide), tileIds);
+						} catch (IOException e) {
+							lastError = e;
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/***
+	 * Save changed regions and stop the background thread, waiting for it to
+	 * finish.
+	 */
+	public void close() throws IOException {
+		flush();
+		io.shutdown();
+		try {
+			io.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (lastError != null) {
+			throw lastError;
+		}
+	}
+
+	public boolean isRegionLoadedAt(int tileX, int tileY) {
+		return regions.get((tileY / regionSize) * regionsWide + tileX / regionSize) != null;
+	}
+
+	public int getNumRegionsInMemory() {
+		int count = 0;
+		for (int i = 0; i < numActiveRegions; i++) {
+			if (regionState[activeRegions[i]] == RESIDENT) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getRegionSize() {
+		return regionSize;
+	}
+
+	public void setResidentRadius(int residentRadius) {
+		this.residentRadius = residentRadius;
+	}
+
+	public void setPrefetchDistance(int prefetchDistance) {
+		this.prefetchDistance = prefetchDistance;
+	}
+
+	/***
+	 * Tile id returned for tiles whose region hasn't been loaded yet.
+	 */
+	public void setMissingTileId(int missingTileId) {
+		this.missingTileId = missingTileId;
+	}
+
+	public void setRegionListener(RegionListener listener) {
+		this.listener = listener;
+	}
+
+	/***
+	 * Last error from the background thread, or null.
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+
+	/***
+	 * Convert a level image on the classpath into a paged world.
+	 *
+	 * Usage: PagedTileMap levelImagePath outputDirectory [regionSize]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: PagedTileMap levelImagePath outputDirectory [regionSize]");
+			return;
+		}
+		int regionSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REGION_SIZE;
+
+		Level level = new Level(args[0]);
+		write(new File(args[1]), level.getTileMap(), regionSize);
+	}
+}
@@ -0,0 +1,95 @@
+package ca.vanzeben.game.level;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ca.vanzeben.game.entities.Entity;
+
+/***
+ * Runs tick() on the entities of an EntityList that say they can be ticked in
+ * parallel (see Entity.canTickInParallel()), splitting the list between the
+ * threads of a ForkJoinPool.
+ * 
+ * Since those entities only change their own state, the result is the same no
+ * matter how many threads are used or in what order they run. With a
+ * parallelism of 1 everything runs on the calling thread.
+ */
+public class ParallelEntityTicker {
+	private static final int MIN_ENTITIES_PER_TASK = 64;
+
+	private final int parallelism;
+	private final ForkJoinPool pool;
+
+	public ParallelEntityTicker(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	/***
+	 * Tick every live entity in entities that can be ticked in parallel. Returns
+	 * once they have all been ticked.
+	 */
+	public void tickIndependent(EntityList entities) {
+		int size = entities.size();
+
+		if (pool == null || size <= MIN_ENTITIES_PER_TASK) {
+			tickRange(entities, 0, size);
+			return;
+		}
+
+		int entitiesPerTask = Math.max(MIN_ENTITIES_PER_TASK, size / (parallelism * 4));
+		pool.invoke(new TickTask(entities, 0, size, entitiesPerTask));
+	}
+
+	private static void tickRange(EntityList entities, int from, int to) {
+		for (int i = from; i < to; i++) {
+			Entity entity = entities.get(i);
+			if (!entity.isDead() && entity.canTickInParallel()) {
+				entity.tick();
+			}
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/***
+	 * Stop the worker threads. The ticker can't be used afterwards.
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	private static class TickTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final EntityList entities;
+		private final int from, to;
+		private final int entitiesPerTask;
+
+		TickTask(EntityList entities, int from, int to, int entitiesPerTask) {
+			this.entities = entities;
+			this.from = from;
+			this.to = to;
+			this.entitiesPerTask = entitiesPerTask;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= entitiesPerTask) {
+				tickRange(entities, from, to);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new TickTask(entities, from, middle, entitiesPerTask),
+					new TickTask(entities, middle, to, entitiesPerTask));
+		}
+	}
+}
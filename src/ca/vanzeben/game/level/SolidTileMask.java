@@ -0,0 +1,236 @@
+package ca.vanzeben.game.level;
+
+import java.util.Arrays;
+
+import ca.vanzeben.game.level.tiles.Tile;
+
+/***
+ * One bit per tile of a level, set where the tile is solid. Each row of tiles
+ * is packed into longs, 64 tiles to a long, so checking whether any tile in a
+ * box is solid takes one or two masked word tests per row instead of looking
+ * up every tile.
+ *
+ * Level keeps this in sync with its TileMap. Tiles outside the map count as
+ * solid, the same as Level.getTileTypeAtWorldCoordinates() returning VOID
+ * there.
+ */
+public class SolidTileMask {
+	private final int width, height;
+	private final int wordsPerRow;
+	private final long[] words;
+
+	// Changes every time a bit does, so users can tell the mask has changed
+	private int version = 0;
+
+	/***
+	 * Create a mask for a width x height tile map with no solid tiles.
+	 */
+	public SolidTileMask(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long[wordsPerRow * height];
+	}
+
+	/***
+	 * Mark every tile solid, e.g. for a paged map whose regions haven't been
+	 * loaded yet.
+	 */
+	public void fillSolid() {
+		Arrays.fill(words, -1L);
+		version++;
+	}
+
+	/***
+	 * Set the bits of a block of tiles from the map's current tile ids.
+	 */
+	public void update(TileMap tileMap, int firstTileX, int firstTileY,
+			int tilesWide, int tilesHigh) {
+		int endX = Math.min(width, firstTileX + tilesWide);
+		int endY = Math.min(height, firstTileY + tilesHigh);
+		for (int y = Math.max(0, firstTileY); y < endY; y++) {
+			for (int x = Math.max(0, firstTileX); x < endX; x++) {
+				set(x, y, Tile.tiles.get(tileMap.getTileId(x, y)).isSolid());
+			}
+		}
+	}
+
+	/***
+	 * Set whether the tile at (tileX, tileY) is solid. Must be inside the map.
+	 */
+	public void set(int tileX, int tileY, boolean solid) {
+		int index = tileY * wordsPerRow + (tileX >>> 6);
+		long bit = 1L << tileX; // shifts only use the low 6 bits
+		long word = solid ? words[index] | bit : words[index] & ~bit;
+		if (word != words[index]) {
+			words[index] = word;
+			version++;
+		}
+	}
+
+	public boolean isSolid(int tileX, int tileY) {
+		if (tileX < 0 || tileX >= width || tileY < 0 || tileY >= height) {
+			return true;
+		}
+		return (words[tileY * wordsPerRow + (tileX >>> 6)] & (1L << tileX)) != 0;
+	}
+
+	/***
+	 * True if any tile from (firstTileX, firstTileY) to (lastTileX, lastTileY)
+	 * inclusive is solid or outside the map.
+	 */
+	public boolean anySolid(int firstTileX, int firstTileY, int lastTileX,
+			int lastTileY) {
+		if (firstTileX < 0 || firstTileY < 0 || lastTileX >= width
+				|| lastTileY >= height) {
+			return true;
+		}
+
+		int firstWord = firstTileX >>> 6;
+		int lastWord = lastTileX >>> 6;
+		long firstMask = -1L << firstTileX;
+		long lastMask = -1L >>> (63 - (lastTileX & 63));
+
+		for (int y = firstTileY; y <= lastTileY; y++) {
+			int row = y * wordsPerRow;
+			if (firstWord == lastWord) {
+				if ((words[row + firstWord] & firstMask & lastMask) != 0) {
+					return true;
+				}
+			} else {
+				if ((words[row + firstWord] & firstMask) != 0
+						|| (words[row + lastWord] & lastMask) != 0) {
+					return true;
+				}
+				for (int w = firstWord + 1; w < lastWord; w++) {
+					if (words[row + w] != 0) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/***
+	 * Scanning right from column fromTileX to toTileX, the first column with a
+	 * solid tile in any of the rows firstTileY to lastTileY, or toTileX + 1 if
+	 * there is none. The rows are combined a word (64 columns) at a time.
+	 */
+	public int firstSolidColumn(int firstTileY, int lastTileY, int fromTileX,
+			int toTileX) {
+		if (firstTileY < 0 || lastTileY >= height || fromTileX < 0
+				|| fromTileX >= width) {
+			return fromTileX;
+		}
+		int endX = Math.min(toTileX, width - 1);
+
+		int firstWord = fromTileX >>> 6;
+		int lastWord = endX >>> 6;
+		for (int w = firstWord; w <= lastWord; w++) {
+			long bits = 0;
+			for (int y = firstTileY; y <= lastTileY; y++) {
+				bits |= words[y * wordsPerRow + w];
+			}
+			if (w == firstWord) {
+				bits &= -1L << fromTileX;
+			}
+			if (w == lastWord) {
+				bits &= -1L >>> (63 - (endX & 63));
+			}
+			if (bits != 0) {
+				return (w << 6) + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		// Off the right edge of the map counts as solid
+		return endX < toTileX ? width : toTileX + 1;
+	}
+
+	/***
+	 * Scanning left from column fromTileX to toTileX, the first column with a
+	 * solid tile in any of the rows firstTileY to lastTileY, or toTileX - 1 if
+	 * there is none.
+	 */
+	public int lastSolidColumn(int firstTileY, int lastTileY, int fromTileX,
+			int toTileX) {
+		if (firstTileY < 0 || lastTileY >= height || fromTileX < 0
+				|| fromTileX >= width) {
+			return fromTileX;
+		}
+		int endX = Math.max(toTileX, 0);
+
+		int firstWord = fromTileX >>> 6;
+		int lastWord = endX >>> 6;
+		for (int w = firstWord; w >= lastWord; w--) {
+			long bits = 0;
+			for (int y = firstTileY; y <= lastTileY; y++) {
+				bits |= words[y * wordsPerRow + w];
+			}
+			if (w == firstWord) {
+				bits &= -1L >>> (63 - (fromTileX & 63));
+			}
+			if (w == lastWord) {
+				bits &= -1L << endX;
+			}
+			if (bits != 0) {
+				return (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+			}
+		}
+		// Off the left edge of the map counts as solid
+		return endX > toTileX ? -1 : toTileX - 1;
+	}
+
+	/***
+	 * Scanning down from row fromTileY to toTileY, the first row with a solid
+	 * tile in any of the columns firstTileX to lastTileX, or toTileY + 1 if
+	 * there is none.
+	 */
+	public int firstSolidRow(int firstTileX, int lastTileX, int fromTileY,
+			int toTileY) {
+		if (fromTileY < 0 || fromTileY >= height) {
+			return fromTileY;
+		}
+		int endY = Math.min(toTileY, height);
+		for (int y = fromTileY; y <= endY; y++) {
+			if (anySolid(firstTileX, y, lastTileX, y)) {
+				return y;
+			}
+		}
+		return toTileY + 1;
+	}
+
+	/***
+	 * Scanning up from row fromTileY to toTileY, the first row with a solid tile
+	 * in any of the columns firstTileX to lastTileX, or toTileY - 1 if there is
+	 * none.
+	 */
+	public int lastSolidRow(int firstTileX, int lastTileX, int fromTileY,
+			int toTileY) {
+		if (fromTileY < 0 || fromTileY >= height) {
+			return fromTileY;
+		}
+		int endY = Math.max(toTileY, -1);
+		for (int y = fromTileY; y >= endY; y--) {
+			if (anySolid(firstTileX, y, lastTileX, y)) {
+				return y;
+			}
+		}
+		return toTileY - 1;
+	}
+
+	/***
+	 * Count of changes to the mask. Differs from an earlier value if any tile's
+	 * bit has changed since.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
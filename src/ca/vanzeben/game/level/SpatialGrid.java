@@ -0,0 +1,199 @@
+package ca.vanzeben.game.level;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ca.vanzeben.game.entities.Entity;
+
+/***
+ * Uniform grid of square cells used to find entities near a point or area
+ * without looking at every entity in the level.
+ *
+ * Each entity is filed under the one cell that contains its upper left corner.
+ * Queries look at every cell the area touches, widened up and to the left by
+ * the largest entity seen so far so that entities poking into the area from a
+ * neighbouring cell are still found.
+ *
+ * Cells are stored in a fixed size hash table rather than an array covering
+ * the level, so entities that wander outside the level are handled and memory
+ * does not grow with the size of the map. Two cells that hash to the same
+ * bucket are told apart by the cell coordinates stored on each entity.
+ *
+ * NOTE: call update() whenever an entity moves, or queries will use its old
+ * position.
+ */
+public class SpatialGrid {
+	private static final int NUM_BUCKETS = 4096; // must be a power of 2
+	private static final int BUCKET_MASK = NUM_BUCKETS - 1;
+
+	private final int cellSize;
+
+	private Entity[][] buckets = new Entity[NUM_BUCKETS][];
+	private int[] bucketSizes = new int[NUM_BUCKETS];
+	private int size = 0;
+
+	// Largest entity dimensions seen, used to widen queries
+	private int maxEntityWidth = 0;
+	private int maxEntityHeight = 0;
+
+	public SpatialGrid(int cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	private static int bucketFor(int cellX, int cellY) {
+		int h = cellX * 73856093 ^ cellY * 19349663;
+		return (h ^ (h >>> 16)) & BUCKET_MASK;
+	}
+
+	private int cellFor(int worldCoord) {
+		return Math.floorDiv(worldCoord, cellSize);
+	}
+
+	public void insert(Entity e) {
+		int cellX = cellFor(e.leftX());
+		int cellY = cellFor(e.topY());
+		int bucket = bucketFor(cellX, cellY);
+
+		Entity[] entities = buckets[bucket];
+		int count = bucketSizes[bucket];
+		if (entities == null) {
+			entities = new Entity[4];
+			buckets[bucket] = entities;
+		} else if (count == entities.length) {
+			entities = Arrays.copyOf(entities, count * 2);
+			buckets[bucket] = entities;
+		}
+
+		entities[count] = e;
+		bucketSizes[bucket] = count + 1;
+		e.setGridLocation(cellX, cellY, count);
+		size++;
+
+		maxEntityWidth = Math.max(maxEntityWidth, e.getWidth());
+		maxEntityHeight = Math.max(maxEntityHeight, e.getHeight());
+	}
+
+	/***
+	 * Remove an entity from the grid. Does nothing if it is not in the grid.
+	 */
+	public void remove(Entity e) {
+		int slot = e.getGridSlot();
+		if (slot < 0) {
+			return;
+		}
+
+		int bucket = bucketFor(e.getGridCellX(), e.getGridCellY());
+		Entity[] entities = buckets[bucket];
+		int last = bucketSizes[bucket] - 1;
+
+		// Move the last entity of the bucket into the hole
+		Entity moved = entities[last];
+		entities[slot] = moved;
+		moved.setGridLocation(moved.getGridCellX(), moved.getGridCellY(), slot);
+		entities[last] = null;
+		bucketSizes[bucket] = last;
+
+		e.setGridLocation(0, 0, -1);
+		size--;
+	}
+
+	/***
+	 * Re-file an entity after it has moved. Cheap when it is still in the same
+	 * cell.
+	 */
+	public void update(Entity e) {
+		if (e.getGridSlot() < 0) {
+			insert(e);
+			return;
+		}
+
+		if (cellFor(e.leftX()) == e.getGridCellX() && cellFor(e.topY()) == e.getGridCellY()) {
+			return;
+		}
+
+		remove(e);
+		insert(e);
+	}
+
+	/***
+	 * Add every entity whose bounding box overlaps the box (left, top) to
+	 * (right, bottom) to out. Edges that touch count as overlapping, the same as
+	 * Entity.isHitting().
+	 *
+	 * @return number of entities added
+	 */
+	public int queryArea(int left, int top, int right, int bottom, List<Entity> out) {
+		int firstCellX = cellFor(left - maxEntityWidth);
+		int firstCellY = cellFor(top - maxEntityHeight);
+		int lastCellX = cellFor(right);
+		int lastCellY = cellFor(bottom);
+
+		int found = 0;
+		for (int cellY = firstCellY; cellY <= lastCellY; cellY++) {
+			for (int cellX = firstCellX; cellX <= lastCellX; cellX++) {
+				int bucket = bucketFor(cellX, cellY);
+				Entity[] entities = buckets[bucket];
+				int count = bucketSizes[bucket];
+
+				for (int i = 0; i < count; i++) {
+					Entity e = entities[i];
+					if (e.getGridCellX() == cellX && e.getGridCellY() == cellY && e.rightX() >= left
+							&& e.leftX() <= right && e.bottomY() >= top && e.topY() <= bottom) {
+						out.add(e);
+						found++;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/***
+	 * Add every entity whose bounding box comes within radius of (x, y) to out.
+	 *
+	 * @return number of entities added
+	 */
+	public int queryRadius(int x, int y, int radius, List<Entity> out) {
+		int start = out.size();
+		queryArea(x - radius, y - radius, x + radius, y + radius, out);
+
+		// Drop the corners of the square that are outside the circle
+		long radiusSquared = (long) radius * radius;
+		int kept = start;
+		for (int i = start; i < out.size(); i++) {
+			Entity e = out.get(i);
+			long dx = x - Math.max(e.leftX(), Math.min(x, e.rightX()));
+			long dy = y - Math.max(e.topY(), Math.min(y, e.bottomY()));
+			if (dx * dx + dy * dy <= radiusSquared) {
+				out.set(kept++, e);
+			}
+		}
+		while (out.size() > kept) {
+			out.remove(out.size() - 1);
+		}
+		return kept - start;
+	}
+
+	public void clear() {
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			Entity[] entities = buckets[b];
+			for (int i = 0; i < bucketSizes[b]; i++) {
+				entities[i].setGridLocation(0, 0, -1);
+				entities[i] = null;
+			}
+			bucketSizes[b] = 0;
+		}
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+}
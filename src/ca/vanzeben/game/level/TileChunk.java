@@ -0,0 +1,153 @@
+package ca.vanzeben.game.level;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import ca.vanzeben.game.gfx.AcceleratedImages;
+import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteCache;
+import ca.vanzeben.game.level.tiles.Tile;
+
+/***
+ * A square block of Level.CHUNK_SIZE x Level.CHUNK_SIZE tiles that is
+ * pre-rendered to an offscreen image. The level draws whole chunks instead of
+ * individual tiles and only re-renders a chunk when one of its tiles changes.
+ *
+ * Animated tiles are left transparent in the chunk image. Their positions are
+ * remembered so the level can draw them on top each frame.
+ */
+public class TileChunk {
+	private final int chunkX, chunkY; // chunk coordinates (not tiles or pixels)
+	private final int firstTileX, firstTileY;
+	private final int tilesWide, tilesHigh;
+
+	private BufferedImage image;
+	private Screen bakeScreen;
+	private boolean dirty = true;
+
+	// Source image coordinates of animated tiles, packed as x, y pairs
+	private int[] animatedTiles = new int[0];
+	private int numAnimatedTiles = 0;
+
+	public TileChunk(int chunkX, int chunkY, int tilesWide, int tilesHigh) {
+		this.chunkX = chunkX;
+		this.chunkY = chunkY;
+		this.firstTileX = chunkX * Level.CHUNK_SIZE;
+		this.firstTileY = chunkY * Level.CHUNK_SIZE;
+		this.tilesWide = tilesWide;
+		this.tilesHigh = tilesHigh;
+	}
+
+	/***
+	 * Re-render every non-animated tile of this chunk into its image.
+	 *
+	 * @param level
+	 * @param spriteCache
+	 *          cache shared with the screen the chunk will be drawn on
+	 */
+	public void bake(Level level, SpriteCache spriteCache) {
+		int tileSize = Level.tileSize;
+
+		if (image == null) {
+			image = AcceleratedImages.create(tilesWide * tileSize,
+					tilesHigh * tileSize, Transparency.TRANSLUCENT);
+			bakeScreen = new Screen(image, spriteCache);
+		} else {
+			// Clear through Graphics rather than the pixel array so the image can
+			// stay in video memory
+			Graphics2D g = image.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.dispose();
+		}
+		bakeScreen.setScreenPosition(getWorldX(), getWorldY());
+
+		numAnimatedTiles = 0;
+		for (int tileY = firstTileY; tileY < firstTileY + tilesHigh; tileY++) {
+			for (int tileX = firstTileX; tileX < firstTileX + tilesWide; tileX++) {
+				Tile tile = level.getRenderedTile(tileX, tileY);
+				if (tile.isAnimated()) {
+					addAnimatedTile(tileX, tileY);
+				} else {
+					tile.render(bakeScreen, level, tileX * tileSize, tileY * tileSize,
+							tileSize, tileSize);
+				}
+			}
+		}
+
+		dirty = false;
+	}
+
+	private void addAnimatedTile(int tileX, int tileY) {
+		if (numAnimatedTiles * 2 == animatedTiles.length) {
+			animatedTiles = Arrays.copyOf(animatedTiles,
+					Math.max(8, animatedTiles.length * 2));
+		}
+		animatedTiles[numAnimatedTiles * 2] = tileX;
+		animatedTiles[numAnimatedTiles * 2 + 1] = tileY;
+		numAnimatedTiles++;
+	}
+
+	/***
+	 * Draw the animated tiles of this chunk. Call after the chunk image has been
+	 * drawn.
+	 *
+	 * @param screen
+	 * @param level
+	 */
+	public void renderAnimatedTiles(Screen screen, Level level) {
+		int tileSize = Level.tileSize;
+
+		for (int i = 0; i < numAnimatedTiles; i++) {
+			int tileX = animatedTiles[i * 2];
+			int tileY = animatedTiles[i * 2 + 1];
+			level.getRenderedTile(tileX, tileY).render(screen, level,
+					tileX * tileSize, tileY * tileSize, tileSize, tileSize);
+		}
+	}
+
+	/***
+	 * Throw away the rendered image to free memory. The chunk will be
+	 * re-rendered next time it is drawn.
+	 */
+	public void release() {
+		image = null;
+		bakeScreen = null;
+		dirty = true;
+	}
+
+	public void markDirty() {
+		dirty = true;
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public boolean isBaked() {
+		return image != null;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	public int getChunkY() {
+		return chunkY;
+	}
+
+	public int getWorldX() {
+		return firstTileX * Level.tileSize;
+	}
+
+	public int getWorldY() {
+		return firstTileY * Level.tileSize;
+	}
+}
@@ -0,0 +1,22 @@
+package ca.vanzeben.game.level;
+
+/***
+ * The grid of tile ids that makes up a level. Coordinates are tile (level
+ * image) coordinates, not world coordinates. Callers check bounds before
+ * calling getTileId() or setTileId().
+ */
+public interface TileMap {
+	/***
+	 * Width of the map in tiles.
+	 */
+	int getWidth();
+
+	/***
+	 * Height of the map in tiles.
+	 */
+	int getHeight();
+
+	int getTileId(int x, int y);
+
+	void setTileId(int x, int y, int id);
+}
@@ -20,6 +20,11 @@ public class AnimatedTile extends BasicTile {
 		this.animationSwitchDelay = animationSwitchDelay;
 	}
 
+	@Override
+	public boolean isAnimated() {
+		return true;
+	}
+
 	public void tick() {
 		if ((System.currentTimeMillis()
 				- lastIterationTime) >= (animationSwitchDelay)) {
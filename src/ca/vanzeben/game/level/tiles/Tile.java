@@ -3,6 +3,7 @@ package ca.vanzeben.game.level.tiles;
 import java.util.ArrayList;
 
 import ca.vanzeben.game.gfx.Screen;
+import ca.vanzeben.game.gfx.SpriteAtlas;
 import ca.vanzeben.game.gfx.SpriteSheet;
 import ca.vanzeben.game.level.Level;
 
@@ -31,6 +32,12 @@ public abstract class Tile {
 //	public static final Tile COIN = new BasicTile(SpriteSheet.tileSheet,
 //			new int[][] { {1, 0}, {6, 18} }, 0xFF00FF33);
 
+	private static TileColourIndex colourIndex;
+
+	// Changes whenever a tile's display layers do, so levels know to redraw
+	// the tiles they have pre-rendered
+	private static volatile int layersVersion = 0;
+
 	protected int id;
 	protected ArrayList<Loc> imageLocLayers;
 	protected boolean solid;
@@ -51,10 +58,34 @@ public abstract class Tile {
 		tiles.add(this);
 	}
 
+	/***
+	 * Index from level image colour to tile id, covering every tile created so
+	 * far. Rebuilt automatically if tiles have been added since it was last
+	 * built.
+	 * 
+	 * @return
+	 */
+	public static synchronized TileColourIndex getColourIndex() {
+		if (colourIndex == null || colourIndex.getNumTiles() != tiles.size()) {
+			colourIndex = new TileColourIndex(tiles);
+		}
+		return colourIndex;
+	}
+
 	public boolean isSolid() {
 		return solid;
 	}
 
+	/***
+	 * Animated tiles change their image over time, so they can't be
+	 * pre-rendered along with the rest of the level.
+	 * 
+	 * @return
+	 */
+	public boolean isAnimated() {
+		return false;
+	}
+
 	public boolean isEmitter() {
 		return emitter;
 	}
@@ -72,9 +103,25 @@ public abstract class Tile {
 		return id;
 	}
 
+	/***
+	 * Add the sprites this tile is drawn with.
+	 * 
+	 * @param atlas
+	 */
+	public void addSpritesTo(SpriteAtlas atlas) {
+		if (imageLocLayers == null) {
+			return;
+		}
+		for (Loc loc : imageLocLayers) {
+			// Drawn with getX() as the row, see BasicTile.render()
+			atlas.add(tileSheet, loc.getX(), loc.getY());
+		}
+	}
+
 	/***
 	 * Add a new tile image to display on top of the existing ones. Automatically
-	 * adds on top of all existing layers.
+	 * adds on top of all existing layers. Levels redraw any tiles they have
+	 * already pre-rendered the next time they draw.
 	 * 
 	 * @param x
 	 *          column of tile in tilesheet to add (note: not pixel coordinate)
@@ -83,6 +130,7 @@ public abstract class Tile {
 	 */
 	public void addDisplayLayer(int x, int y) {
 		this.imageLocLayers.add(new Loc(x, y));
+		layersVersion++;
 	}
 
 	/***
@@ -90,7 +138,7 @@ public abstract class Tile {
 	 * @return
 	 */
 	public Loc removeDisplayLayer() {
-		return this.imageLocLayers.remove(imageLocLayers.size()-1);
+		return removeDisplayLayer(imageLocLayers.size() - 1);
 	}
 
 	/***
@@ -102,6 +150,16 @@ public abstract class Tile {
 	 * @return
 	 */
 	public Loc removeDisplayLayer(int layer) {
-		return this.imageLocLayers.remove(layer);
+		Loc removed = this.imageLocLayers.remove(layer);
+		layersVersion++;
+		return removed;
+	}
+
+	/***
+	 * Count of changes to any tile's display layers. If it differs from an
+	 * earlier value, tiles drawn before then may look different now.
+	 */
+	public static int getLayersVersion() {
+		return layersVersion;
 	}
 }
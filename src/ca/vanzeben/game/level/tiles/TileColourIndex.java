@@ -0,0 +1,81 @@
+package ca.vanzeben.game.level.tiles;
+
+import java.util.List;
+
+/***
+ * Maps the colour that represents a tile in a level image to that tile's id.
+ * An open addressing hash table of plain ints, so looking up a pixel's tile
+ * neither boxes nor walks the whole tile list.
+ * 
+ * When two tiles share a colour the one registered first wins, the same as
+ * searching Tile.tiles in order.
+ */
+public class TileColourIndex {
+	public static final int NO_TILE = -1;
+
+	private final int[] colours;
+	private final int[] ids; // NO_TILE marks an empty slot
+	private final int mask;
+	private final int numTiles;
+
+	public TileColourIndex(List<Tile> tiles) {
+		int capacity = Integer.highestOneBit(Math.max(4, tiles.size() * 4) - 1) << 1;
+		colours = new int[capacity];
+		ids = new int[capacity];
+		mask = capacity - 1;
+		numTiles = tiles.size();
+
+		for (int i = 0; i < capacity; i++) {
+			ids[i] = NO_TILE;
+		}
+
+		for (Tile t : tiles) {
+			if (t != null) {
+				insert(t.getLevelColour(), t.getId());
+			}
+		}
+	}
+
+	private static int slotFor(int colour) {
+		int h = colour * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void insert(int colour, int id) {
+		int slot = slotFor(colour) & mask;
+		while (ids[slot] != NO_TILE) {
+			if (colours[slot] == colour) {
+				return; // first tile with this colour wins
+			}
+			slot = (slot + 1) & mask;
+		}
+		colours[slot] = colour;
+		ids[slot] = id;
+	}
+
+	/***
+	 * Return the id of the tile drawn with colour in level images, or NO_TILE.
+	 * 
+	 * @param colour
+	 *          ARGB colour
+	 * @return
+	 */
+	public int getId(int colour) {
+		int slot = slotFor(colour) & mask;
+		int id;
+		while ((id = ids[slot]) != NO_TILE) {
+			if (colours[slot] == colour) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NO_TILE;
+	}
+
+	/***
+	 * Number of tiles registered when the index was built.
+	 */
+	public int getNumTiles() {
+		return numTiles;
+	}
+}
@@ -0,0 +1,44 @@
+package ca.vanzeben.game.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/***
+ * Reports how many bytes the current thread has allocated, so the game loop
+ * can record how much garbage each frame makes. Only works on JVMs that have
+ * com.sun.management.ThreadMXBean (HotSpot and OpenJ9 do); elsewhere
+ * isSupported() is false.
+ */
+public class AllocationMeter {
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	public AllocationMeter() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean sunBean = null;
+
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported()) {
+				sunBean.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				sunBean = null;
+			}
+		}
+		this.threadBean = sunBean;
+	}
+
+	public boolean isSupported() {
+		return threadBean != null;
+	}
+
+	/***
+	 * Total bytes allocated by the calling thread so far, or 0 if not
+	 * supported. Subtract two readings to get the bytes allocated in between.
+	 */
+	public long getAllocatedBytes() {
+		if (threadBean == null) {
+			return 0;
+		}
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
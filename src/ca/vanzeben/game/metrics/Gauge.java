@@ -0,0 +1,26 @@
+package ca.vanzeben.game.metrics;
+
+/***
+ * A single value that is set rather than recorded, e.g. the number of
+ * entities in the level.
+ */
+public class Gauge {
+	private final String name;
+	private volatile long value;
+
+	public Gauge(String name) {
+		this.name = name;
+	}
+
+	public void set(long value) {
+		this.value = value;
+	}
+
+	public long get() {
+		return value;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,121 @@
+package ca.vanzeben.game.metrics;
+
+import java.util.Arrays;
+
+/***
+ * Keeps the most recent values recorded (e.g. frame times in nanoseconds) and
+ * reports percentiles over them. Recording never allocates, so it is safe to
+ * call every frame.
+ * 
+ * Every method is synchronized, so one thread can record while another reads
+ * percentiles (e.g. with Game.RENDER_THREAD). The lock is uncontended almost
+ * all the time.
+ */
+public class Histogram {
+	private final String name;
+	private final long[] samples;
+	private final long[] sorted; // scratch space for percentiles
+	private boolean sortedIsCurrent = false;
+
+	private int next = 0; // where the next sample goes
+	private int numSamples = 0;
+	private long totalCount = 0;
+
+	public Histogram(String name, int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("Window must be positive: " + window);
+		}
+		this.name = name;
+		this.samples = new long[window];
+		this.sorted = new long[window];
+	}
+
+	public synchronized void record(long value) {
+		samples[next] = value;
+		next = (next + 1) % samples.length;
+		if (numSamples < samples.length) {
+			numSamples++;
+		}
+		totalCount++;
+		sortedIsCurrent = false;
+	}
+
+	/***
+	 * Value below which the given fraction of the recent samples fall, e.g.
+	 * getPercentile(0.99) for p99. 0 if nothing has been recorded.
+	 */
+	public synchronized long getPercentile(double fraction) {
+		if (numSamples == 0) {
+			return 0;
+		}
+		if (!sortedIsCurrent) {
+			System.arraycopy(samples, 0, sorted, 0, numSamples);
+			Arrays.sort(sorted, 0, numSamples);
+			sortedIsCurrent = true;
+		}
+		int index = (int) Math.ceil(fraction * numSamples) - 1;
+		return sorted[Math.max(0, Math.min(numSamples - 1, index))];
+	}
+
+	public long getP50() {
+		return getPercentile(0.5);
+	}
+
+	public long getP99() {
+		return getPercentile(0.99);
+	}
+
+	public long getMax() {
+		return getPercentile(1.0);
+	}
+
+	public synchronized double getMean() {
+		if (numSamples == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < numSamples; i++) {
+			total += samples[i];
+		}
+		return (double) total / numSamples;
+	}
+
+	/***
+	 * Most recently recorded value, or 0.
+	 */
+	public synchronized long getLast() {
+		if (numSamples == 0) {
+			return 0;
+		}
+		return samples[(next + samples.length - 1) % samples.length];
+	}
+
+	/***
+	 * Number of samples the percentiles are taken over (at most the window).
+	 */
+	public synchronized int getNumSamples() {
+		return numSamples;
+	}
+
+	/***
+	 * Number of values recorded since the histogram was created or reset.
+	 */
+	public synchronized long getTotalCount() {
+		return totalCount;
+	}
+
+	public int getWindow() {
+		return samples.length;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized void reset() {
+		next = 0;
+		numSamples = 0;
+		totalCount = 0;
+		sortedIsCurrent = false;
+	}
+}
@@ -0,0 +1,54 @@
+package ca.vanzeben.game.metrics;
+
+import ca.vanzeben.game.gfx.Font;
+import ca.vanzeben.game.gfx.Screen;
+
+/***
+ * Draws a registry's metrics in the corner of the screen: p50 and p99 of each
+ * timing in milliseconds, then the gauges. Histograms whose name ends in
+ * "bytes" are shown in kilobytes instead.
+ */
+public class MetricsOverlay {
+	private static final int SCALE = 2;
+
+	private final MetricsRegistry metrics;
+	private final Font font;
+
+	public MetricsOverlay(MetricsRegistry metrics) {
+		this(metrics, Font.DEFAULT);
+	}
+
+	public MetricsOverlay(MetricsRegistry metrics, Font font) {
+		this.metrics = metrics;
+		this.font = font;
+	}
+
+	/***
+	 * Draw the overlay with its top left corner at screen coordinates (x, y).
+	 */
+	public void render(Screen screen, int x, int y) {
+		int lineHeight = 10 * SCALE;
+
+		for (Histogram h : metrics.getHistograms()) {
+			String line;
+			if (h.getName().endsWith("bytes")) {
+				line = h.getName() + " " + h.getP50() / 1024 + "K " + h.getP99() / 1024 + "K";
+			} else {
+				line = h.getName() + " " + millis(h.getP50()) + " " + millis(h.getP99());
+			}
+			screen.renderTextAtScreenCoordinates(line, font, x, y, SCALE);
+			y += lineHeight;
+		}
+
+		for (Gauge g : metrics.getGauges()) {
+			screen.renderTextAtScreenCoordinates(g.getName() + " " + g.get(), font, x, y, SCALE);
+			y += lineHeight;
+		}
+	}
+
+	// Nanoseconds as milliseconds with two decimal places
+	private static String millis(long nanos) {
+		long hundredths = (nanos + 5000) / 10000;
+		return hundredths / 100 + "." + (hundredths % 100 < 10 ? "0" : "") + hundredths % 100;
+	}
+}
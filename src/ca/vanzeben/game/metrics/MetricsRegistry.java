@@ -0,0 +1,93 @@
+package ca.vanzeben.game.metrics;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/***
+ * Named histograms and gauges for the game loop. Look a metric up once and keep
+ * the reference; recording into it is then just an array write.
+ * 
+ * Timings are recorded in nanoseconds. Metrics are listed in the order they
+ * were first asked for.
+ * 
+ * NOTE: create metrics from one thread. The histograms and gauges themselves
+ * can be recorded and read from different threads.
+ */
+public class MetricsRegistry {
+	public static final int DEFAULT_WINDOW = 300; // 5 seconds at 60 frames per second
+
+	private final int window;
+	private final LinkedHashMap<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+	private final LinkedHashMap<String, Gauge> gauges = new LinkedHashMap<String, Gauge>();
+
+	public MetricsRegistry() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/***
+	 * @param window
+	 *          number of recent samples each histogram keeps
+	 */
+	public MetricsRegistry(int window) {
+		this.window = window;
+	}
+
+	/***
+	 * Get the histogram with this name, creating it if needed.
+	 */
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram(name, window);
+			histograms.put(name, histogram);
+		}
+		return histogram;
+	}
+
+	/***
+	 * Get the gauge with this name, creating it if needed.
+	 */
+	public Gauge gauge(String name) {
+		Gauge gauge = gauges.get(name);
+		if (gauge == null) {
+			gauge = new Gauge(name);
+			gauges.put(name, gauge);
+		}
+		return gauge;
+	}
+
+	public Collection<Histogram> getHistograms() {
+		return histograms.values();
+	}
+
+	public Collection<Gauge> getGauges() {
+		return gauges.values();
+	}
+
+	public void reset() {
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/***
+	 * One line per metric. Histograms show p50 / p99 / max in milliseconds, or
+	 * in kilobytes for those whose name ends in "bytes".
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		for (Histogram h : histograms.values()) {
+			if (h.getName().endsWith("bytes")) {
+				report.append(String.format("%-16s p50 %7dK    p99 %7dK    max %7dK%n", h.getName(),
+						h.getP50() / 1024, h.getP99() / 1024, h.getMax() / 1024));
+			} else {
+				report.append(String.format("%-16s p50 %7.3fms  p99 %7.3fms  max %7.3fms%n", h.getName(),
+						h.getP50() / 1e6, h.getP99() / 1e6, h.getMax() / 1e6));
+			}
+		}
+		for (Gauge g : gauges.values()) {
+			report.append(String.format("%-16s %d%n", g.getName(), g.get()));
+		}
+		return report.toString();
+	}
+}